@@ -0,0 +1,33 @@
+package net.masterthought.jenkins;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs JMH benchmarks of the plugin with {@code mvn test} in this module, against the plugin installed into the local
+ * repository. Benchmarks to run are selected by regular expression in {@code benchmark.include} system property, e.g.
+ * {@code -Dbenchmark.include=FileDiscovery}.
+ * Results are written to {@code target/jmh-report.json}.
+ */
+class BenchmarkRunner {
+
+    @Test
+    void runBenchmarks() throws Exception {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(getClass().getPackage().getName() + "\\..*" + System.getProperty("benchmark.include", "") + ".*Benchmark")
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(2))
+                .forks(Integer.getInteger("benchmark.forks", 1))
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-report.json");
+        new Runner(options.build()).run();
+    }
+}
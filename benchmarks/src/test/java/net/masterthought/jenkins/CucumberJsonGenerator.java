@@ -0,0 +1,168 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes synthetic Cucumber JSON reports for benchmarks. Reports depend only on the seed and the sizes, so results
+ * can be compared between runs and machines without any real test suite.
+ */
+public class CucumberJsonGenerator {
+
+    private static final String[] KEYWORDS = {"Given ", "When ", "Then ", "And "};
+
+    private final Random random;
+
+    private int features = 5;
+    private int scenarios = 10;
+    private int steps = 6;
+    private double failureRate = 0.05;
+    private int embeddingSize;
+
+    public CucumberJsonGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param features number of features in every file
+     */
+    public CucumberJsonGenerator features(int features) {
+        this.features = features;
+        return this;
+    }
+
+    /**
+     * @param scenarios number of scenarios in every feature
+     */
+    public CucumberJsonGenerator scenarios(int scenarios) {
+        this.scenarios = scenarios;
+        return this;
+    }
+
+    /**
+     * @param steps number of steps in every scenario
+     */
+    public CucumberJsonGenerator steps(int steps) {
+        this.steps = steps;
+        return this;
+    }
+
+    /**
+     * @param failureRate probability that the step fails, remaining steps of the scenario are skipped
+     */
+    public CucumberJsonGenerator failureRate(double failureRate) {
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * @param embeddingSize size in bytes of the screenshot attached to the last step of every scenario, 0 for none
+     */
+    public CucumberJsonGenerator embeddingSize(int embeddingSize) {
+        this.embeddingSize = embeddingSize;
+        return this;
+    }
+
+    /**
+     * Writes the reports into the directory.
+     *
+     * @param files number of files to write
+     * @return absolute paths of the written files
+     */
+    public List<String> write(File directory, int files) throws IOException {
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        JsonFactory factory = new JsonFactory();
+        List<String> paths = new ArrayList<>();
+        for (int file = 0; file < files; file++) {
+            File report = new File(directory, "report-" + file + ".json");
+            try (JsonGenerator generator = factory.createGenerator(report, JsonEncoding.UTF8)) {
+                writeReport(generator, file);
+            }
+            paths.add(report.getAbsolutePath());
+        }
+        return paths;
+    }
+
+    private void writeReport(JsonGenerator generator, int file) throws IOException {
+        generator.writeStartArray();
+        for (int feature = 0; feature < features; feature++) {
+            String featureId = "feature-" + file + "-" + feature;
+            generator.writeStartObject();
+            generator.writeStringField("id", featureId);
+            generator.writeStringField("uri", "features/" + featureId + ".feature");
+            generator.writeStringField("keyword", "Feature");
+            generator.writeStringField("name", "Feature " + file + "." + feature);
+            generator.writeNumberField("line", 1);
+            generator.writeStringField("description", "");
+            generator.writeArrayFieldStart("elements");
+            for (int scenario = 0; scenario < scenarios; scenario++) {
+                writeScenario(generator, featureId, scenario);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private void writeScenario(JsonGenerator generator, String featureId, int scenario) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", featureId + ";scenario-" + scenario);
+        generator.writeStringField("keyword", "Scenario");
+        generator.writeStringField("name", "Scenario " + scenario);
+        generator.writeStringField("type", "scenario");
+        generator.writeNumberField("line", 3 + scenario * (steps + 2));
+        generator.writeArrayFieldStart("tags");
+        generator.writeStartObject();
+        generator.writeStringField("name", "@tag" + random.nextInt(10));
+        generator.writeEndObject();
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("steps");
+        boolean failed = false;
+        for (int step = 0; step < steps; step++) {
+            String status = "passed";
+            if (failed) {
+                status = "skipped";
+            } else if (random.nextDouble() < failureRate) {
+                status = "failed";
+                failed = true;
+            }
+            generator.writeStartObject();
+            generator.writeStringField("keyword", KEYWORDS[Math.min(step, KEYWORDS.length - 1)]);
+            generator.writeStringField("name", "step number " + random.nextInt(100));
+            generator.writeNumberField("line", 4 + step);
+            generator.writeObjectFieldStart("match");
+            generator.writeStringField("location", "Steps.step" + random.nextInt(50) + "()");
+            generator.writeEndObject();
+            generator.writeObjectFieldStart("result");
+            generator.writeStringField("status", status);
+            generator.writeNumberField("duration", "skipped".equals(status) ? 0 : 1_000_000L + random.nextInt(100_000_000));
+            if ("failed".equals(status)) {
+                generator.writeStringField("error_message", "java.lang.AssertionError: expected true\n\tat Steps.step()");
+            }
+            generator.writeEndObject();
+            if (embeddingSize > 0 && step == steps - 1) {
+                byte[] screenshot = new byte[embeddingSize];
+                random.nextBytes(screenshot);
+                generator.writeArrayFieldStart("embeddings");
+                generator.writeStartObject();
+                generator.writeStringField("mime_type", "image/png");
+                generator.writeFieldName("data");
+                generator.writeBinary(screenshot);
+                generator.writeEndObject();
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,101 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import hudson.FilePath;
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.ant.DirectoryScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Finding JSON reports in the workspace, next to many files the report does not use (like dependencies of the tested
+ * web application), and copying them to the controller. Copying is measured between two local directories, the same
+ * way as for the builds running on the controller.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class FileDiscoveryBenchmark {
+
+    private static final String INCLUDES = "**/*.json";
+    private static final String EXCLUDES = "**/node_modules/**";
+
+    @Param({"100", "1000"})
+    public int reports;
+
+    @Param({"0", "10000"})
+    public int unrelatedFiles;
+
+    private File workspace;
+    private FileFinder finder;
+
+    @Setup(Level.Trial)
+    public void createWorkspace() throws IOException {
+        workspace = Files.createTempDirectory("cucumber-workspace").toFile();
+        new CucumberJsonGenerator(42).features(1).scenarios(2).write(new File(workspace, "target/cucumber"), reports);
+        for (int i = 0; i < unrelatedFiles; i++) {
+            File file = new File(workspace, "web/node_modules/module-" + i / 100 + "/package-" + i + ".json");
+            FileUtils.writeStringToFile(file, "{}", "UTF-8");
+        }
+        finder = new FileFinder().add("json", INCLUDES, EXCLUDES, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorkspace() throws IOException {
+        FileUtils.deleteDirectory(workspace);
+    }
+
+    /**
+     * Directory the reports are copied into, new for every copy.
+     */
+    @State(Scope.Thread)
+    public static class CopyTarget {
+
+        private File directory;
+
+        @Setup(Level.Invocation)
+        public void create() throws IOException {
+            directory = Files.createTempDirectory("cucumber-copy").toFile();
+        }
+
+        @TearDown(Level.Invocation)
+        public void delete() throws IOException {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    @Benchmark
+    public String[] directoryScanner() {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(workspace);
+        scanner.setIncludes(INCLUDES.split(",\\s*"));
+        scanner.setExcludes(EXCLUDES.split(",\\s*"));
+        scanner.scan();
+        return scanner.getIncludedFiles();
+    }
+
+    @Benchmark
+    public Map<String, List<String>> fileFinder() throws IOException {
+        return finder.find(workspace);
+    }
+
+    @Benchmark
+    public int copyRecursiveTo(CopyTarget target) throws IOException, InterruptedException {
+        return new FilePath(workspace).copyRecursiveTo(finder.toDirScanner(), new FilePath(target.directory),
+                "Cucumber report files", FilePath.TarCompression.GZIP);
+    }
+}
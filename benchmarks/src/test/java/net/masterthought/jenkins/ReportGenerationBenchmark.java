@@ -0,0 +1,72 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.masterthought.cucumber.Configuration;
+import net.masterthought.cucumber.ReportBuilder;
+import net.masterthought.cucumber.Reportable;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Generating the report from synthetic JSON reports of different sizes, and scanning the same reports for the summary,
+ * history and gate of the build.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ReportGenerationBenchmark {
+
+    @Param({"10", "100"})
+    public int files;
+
+    @Param({"0", "65536"})
+    public int embeddingSize;
+
+    private File directory;
+    private List<String> jsonFiles;
+
+    @Setup(Level.Trial)
+    public void createReports() throws IOException {
+        directory = Files.createTempDirectory("cucumber-reports").toFile();
+        jsonFiles = new CucumberJsonGenerator(42).embeddingSize(embeddingSize).write(new File(directory, "json"), files);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteReports() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public Reportable generateReports() {
+        Configuration configuration = new Configuration(new File(directory, "report"), "benchmark");
+        configuration.setBuildNumber("1");
+        return new ReportBuilder(jsonFiles, configuration).generateReports();
+    }
+
+    @Benchmark
+    public ReportSummary scanReports() throws IOException {
+        CucumberJsonScanner scanner = new CucumberJsonScanner(0);
+        ReportScan scan = new ReportScan();
+        for (String jsonFile : jsonFiles) {
+            ReportScan.FileScan fileScan = new ReportScan.FileScan();
+            scanner.scan(new File(jsonFile), fileScan);
+            scan.add(fileScan);
+        }
+        return scan.getSummary(Collections.emptySet(), false, false);
+    }
+}
@@ -0,0 +1,84 @@
+package net.masterthought.jenkins;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import net.masterthought.cucumber.Configuration;
+import net.masterthought.cucumber.ReportBuilder;
+import org.apache.commons.io.FileUtils;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Recording checksums of the generated report, and verifying them when the files of the report are requested.
+ * Requests are verified both with the checksums of the files cached, as for the pages opened again, and without.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SafeArchiveServingActionBenchmark {
+
+    @Param({"10", "100"})
+    public int files;
+
+    private File directory;
+    private SafeArchiveServingAction action;
+    private StaplerRequest request;
+    private StaplerResponse response;
+
+    @Setup(Level.Trial)
+    public void createReport() throws IOException, NoSuchAlgorithmException {
+        directory = Files.createTempDirectory("cucumber-report").toFile();
+        Configuration configuration = new Configuration(directory, "benchmark");
+        configuration.setBuildNumber("1");
+        new ReportBuilder(new CucumberJsonGenerator(42).write(new File(directory, "json"), files), configuration).generateReports();
+
+        action = new SafeArchiveServingAction(new File(directory, ReportBuilder.BASE_DIRECTORY), ReportBuilder.BASE_DIRECTORY,
+                ReportBuilder.HOME_PAGE, CucumberReportBaseAction.ICON_NAME, "benchmark");
+        action.processDirectory();
+
+        request = mock(StaplerRequest.class);
+        when(request.getRestOfPath()).thenReturn("/" + ReportBuilder.HOME_PAGE);
+        response = mock(StaplerResponse.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteReport() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void processDirectory() throws IOException, NoSuchAlgorithmException {
+        action.processDirectory();
+    }
+
+    @Benchmark
+    public HttpResponse doDynamic() throws IOException, ServletException {
+        return action.doDynamic(request, response);
+    }
+
+    @Benchmark
+    public HttpResponse doDynamicWithoutCachedChecksums() throws IOException, ServletException {
+        ChecksumCache.clear();
+        return action.doDynamic(request, response);
+    }
+}
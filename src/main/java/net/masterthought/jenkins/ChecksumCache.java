@@ -0,0 +1,208 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+import net.jcip.annotations.GuardedBy;
+
+/**
+ * Remembers checksums of served files so files that did not change since they were verified are not read and hashed
+ * again on every request.
+ *
+ * Files are identified by path, size, modification time, change time and file key (inode) when the platform provides
+ * them. The number of remembered files is limited and least recently used entries are evicted first.
+ *
+ * Number of hits and misses can be checked from the script console, e.g.
+ * {@code net.masterthought.jenkins.ChecksumCache.getHits()}.
+ */
+public final class ChecksumCache {
+
+    /**
+     * Maximum number of remembered files.
+     */
+    static final int MAX_SIZE = SystemProperties.getInteger(ChecksumCache.class.getName() + ".maxSize", 10000);
+
+    @GuardedBy("CACHE")
+    private static final Map<Key, String> CACHE = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private ChecksumCache() {
+    }
+
+    /**
+     * Returns checksum of the file, calculated only when the file was not seen before or changed since then.
+     */
+    public static String getChecksum(@NonNull File file) throws IOException {
+        return getChecksum(file, () -> ChecksumManifest.calculateChecksum(file));
+    }
+
+    /**
+     * Reads the file into the heap together with its checksum, which is calculated from the read content only when the
+     * file was not seen before or changed since then. Attributes of the file are compared before and after reading, so
+     * the checksum taken from the cache belongs to the same version of the file as the returned content.
+     *
+     * @param maxSize maximum size of the file to read
+     * @return content of the file, {@code null} when the file is bigger than allowed
+     */
+    @CheckForNull
+    public static Content read(@NonNull File file, long maxSize) throws IOException {
+        Path path = file.toPath();
+        Key key = Key.of(path);
+        if (key.size > maxSize) {
+            return null;
+        }
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (!key.equals(Key.of(path))) {
+            // modified while being read, content is hashed but not remembered
+            MISSES.incrementAndGet();
+            return new Content(content, ChecksumManifest.calculateChecksum(content));
+        }
+        synchronized (CACHE) {
+            String checksum = CACHE.get(key);
+            if (checksum != null) {
+                HITS.incrementAndGet();
+                return new Content(content, checksum);
+            }
+        }
+        MISSES.incrementAndGet();
+        String checksum = ChecksumManifest.calculateChecksum(content);
+        synchronized (CACHE) {
+            CACHE.put(key, checksum);
+        }
+        return new Content(content, checksum);
+    }
+
+    private static String getChecksum(File file, ChecksumCalculator calculator) throws IOException {
+        Key key = Key.of(file.toPath());
+        synchronized (CACHE) {
+            String checksum = CACHE.get(key);
+            if (checksum != null) {
+                HITS.incrementAndGet();
+                return checksum;
+            }
+        }
+
+        MISSES.incrementAndGet();
+        String checksum = calculator.calculate();
+        // attributes are read again so file modified during hashing is not remembered with outdated checksum
+        if (key.equals(Key.of(file.toPath()))) {
+            synchronized (CACHE) {
+                CACHE.put(key, checksum);
+            }
+        }
+        return checksum;
+    }
+
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    public static int getSize() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Content of the file and its checksum.
+     */
+    public static final class Content {
+
+        private final ByteBuffer bytes;
+        private final String checksum;
+
+        Content(ByteBuffer bytes, String checksum) {
+            this.bytes = bytes;
+            this.checksum = checksum;
+        }
+
+        public ByteBuffer getBytes() {
+            return bytes;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+    }
+
+    private interface ChecksumCalculator {
+        String calculate() throws IOException;
+    }
+
+    private static final class Key {
+
+        private final String path;
+        private final long size;
+        private final FileTime lastModified;
+        private final Object changeTime;
+        private final Object fileKey;
+
+        private Key(String path, long size, FileTime lastModified, Object changeTime, Object fileKey) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.changeTime = changeTime;
+            this.fileKey = fileKey;
+        }
+
+        static Key of(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            Object changeTime = null;
+            try {
+                // change time can not be set by the user, unlike modification time
+                changeTime = Files.getAttribute(path, "unix:ctime");
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                // not available on this platform
+            }
+            return new Key(path.toAbsolutePath().toString(), attributes.size(), attributes.lastModifiedTime(),
+                    changeTime, attributes.fileKey());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return size == other.size && lastModified.equals(other.lastModified) && path.equals(other.path)
+                    && Objects.equals(changeTime, other.changeTime) && Objects.equals(fileKey, other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, lastModified);
+        }
+    }
+}
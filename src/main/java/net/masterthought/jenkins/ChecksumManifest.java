@@ -0,0 +1,243 @@
+package net.masterthought.jenkins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Calculates checksums of the report files and stores them in a manifest file next to the report directory, so they
+ * do not have to be kept in memory and persisted with the build.
+ *
+ * Manifest contains one line per file with SHA-1 checksum and path relative to the report directory.
+ */
+public final class ChecksumManifest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private static final int FILES_PER_TASK = 32;
+
+    private ChecksumManifest() {
+    }
+
+    /**
+     * Calculates SHA-1 checksum of the file.
+     *
+     * Whole buffer is digested after every read (also when it was filled partially) to stay compatible with
+     * checksums recorded by previous versions of the plugin.
+     */
+    public static String calculateChecksum(@NonNull File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return calculateChecksum(in);
+        }
+    }
+
+    /**
+     * Calculates SHA-1 checksum of the stream, the same way as {@link #calculateChecksum(File)} does. Buffer is always
+     * filled completely before it is digested, so the checksum does not depend on how many bytes the stream returns
+     * from one read (which matters for decompressed streams).
+     */
+    public static String calculateChecksum(@NonNull InputStream in) throws IOException {
+        MessageDigest sha1 = createDigest();
+        byte[] bytes = new byte[1024];
+        int read;
+        while ((read = IOUtils.read(in, bytes)) > 0) {
+            sha1.update(bytes);
+            if (read < bytes.length) {
+                break;
+            }
+        }
+        return Util.toHexString(sha1.digest());
+    }
+
+    /**
+     * Calculates SHA-1 checksum of the content, the same way as {@link #calculateChecksum(InputStream)} does.
+     */
+    public static String calculateChecksum(@NonNull ByteBuffer content) {
+        MessageDigest sha1 = createDigest();
+        ByteBuffer buffer = content.duplicate();
+        byte[] bytes = new byte[1024];
+        while (buffer.hasRemaining()) {
+            buffer.get(bytes, 0, Math.min(bytes.length, buffer.remaining()));
+            sha1.update(bytes);
+        }
+        return Util.toHexString(sha1.digest());
+    }
+
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // cannot happen
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Calculates checksums of all files in the directory and its descendants. Files are processed in parallel.
+     *
+     * @param directory directory to scan
+     * @param skipped   tells which files (by name) should not have checksum recorded
+     * @return checksums of the files by their paths relative to the directory
+     * @throws IOException when any file could not be read
+     */
+    public static Map<String, String> calculate(@NonNull File directory, @NonNull Predicate<String> skipped) throws IOException {
+        Map<String, String> checksums = new ConcurrentHashMap<>();
+        try {
+            POOL.invoke(new DirectoryTask(directory, null, skipped, checksums));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new HashMap<>(checksums);
+    }
+
+    /**
+     * Calculates checksums of all entries of the zip file.
+     *
+     * @param zipFile zip file to scan
+     * @param skipped tells which entries (by name) should not have checksum recorded
+     * @return checksums of the entries by their paths
+     * @throws IOException when any entry could not be read
+     */
+    public static Map<String, String> calculate(@NonNull ZipFile zipFile, @NonNull Predicate<String> skipped) throws IOException {
+        Map<String, String> checksums = new HashMap<>();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && !skipped.test(entry.getName())) {
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    checksums.put(entry.getName(), calculateChecksum(in));
+                }
+            }
+        }
+        return checksums;
+    }
+
+    public static void write(@NonNull File manifest, @NonNull Map<String, String> checksums) throws IOException {
+        File tempFile = new File(manifest.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> checksum : new TreeMap<>(checksums).entrySet()) {
+                writer.write(checksum.getValue());
+                writer.write(' ');
+                writer.write(checksum.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(tempFile.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the manifest.
+     *
+     * @return checksums by relative paths, empty when manifest does not exist
+     */
+    public static Map<String, String> read(@NonNull File manifest) throws IOException {
+        Map<String, String> checksums = new HashMap<>();
+        if (!manifest.isFile()) {
+            return checksums;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(' ');
+                if (separator > 0) {
+                    checksums.put(line.substring(separator + 1), line.substring(0, separator));
+                }
+            }
+        }
+        return checksums;
+    }
+
+    private static final class DirectoryTask extends RecursiveAction {
+
+        private final File directory;
+        private final String path;
+        private final Predicate<String> skipped;
+        private final Map<String, String> checksums;
+
+        DirectoryTask(File directory, String path, Predicate<String> skipped, Map<String, String> checksums) {
+            this.directory = directory;
+            this.path = path;
+            this.skipped = skipped;
+            this.checksums = checksums;
+        }
+
+        @Override
+        protected void compute() {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                throw new IllegalArgumentException(directory + " listing returned null");
+            }
+
+            List<RecursiveAction> tasks = new ArrayList<>();
+            List<File> batch = new ArrayList<>();
+            for (File file : files) {
+                String relativePath = getRelativePath(file);
+                if (file.isDirectory()) {
+                    tasks.add(new DirectoryTask(file, relativePath, skipped, checksums));
+                } else if (file.isFile() && !skipped.test(file.getName())) {
+                    batch.add(file);
+                    if (batch.size() == FILES_PER_TASK) {
+                        tasks.add(new FilesTask(this, batch));
+                        batch = new ArrayList<>();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                tasks.add(new FilesTask(this, batch));
+            }
+            invokeAll(tasks);
+        }
+
+        private String getRelativePath(File file) {
+            return path == null ? file.getName() : path + "/" + file.getName();
+        }
+    }
+
+    private static final class FilesTask extends RecursiveAction {
+
+        private final DirectoryTask directory;
+        private final List<File> files;
+
+        FilesTask(DirectoryTask directory, List<File> files) {
+            this.directory = directory;
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            for (File file : files) {
+                try {
+                    directory.checksums.put(directory.getRelativePath(file), calculateChecksum(file));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
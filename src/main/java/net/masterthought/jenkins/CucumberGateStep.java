@@ -0,0 +1,333 @@
+package net.masterthought.jenkins;
+
+import java.util.Map;
+import java.util.Set;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.ListBoxModel;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.verb.POST;
+
+/**
+ * Pipeline step which evaluates thresholds of the Cucumber report without generating it. The step changes the build
+ * result in the same way as the report does and returns numbers of features, scenarios and steps, e.g.
+ * <pre>
+ * def gate = cucumberGate fileIncludePattern: '**&#47;*.json', failedScenariosNumber: 0, buildStatus: 'UNSTABLE'
+ * echo "${gate.failedScenarios} of ${gate.scenarios} scenarios failed"
+ * </pre>
+ */
+public class CucumberGateStep extends Step {
+
+    /**
+     * Publisher which evaluates the gate, the options of the step are the options of the publisher.
+     */
+    private final CucumberReportPublisher publisher;
+
+    @DataBoundConstructor
+    public CucumberGateStep(String fileIncludePattern) {
+        this.publisher = new CucumberReportPublisher(fileIncludePattern);
+        this.publisher.setGateOnly(true);
+    }
+
+    public String getFileIncludePattern() {
+        return publisher.getFileIncludePattern();
+    }
+
+    @DataBoundSetter
+    public void setFileExcludePattern(String fileExcludePattern) {
+        publisher.setFileExcludePattern(fileExcludePattern);
+    }
+
+    public String getFileExcludePattern() {
+        return publisher.getFileExcludePattern();
+    }
+
+    @DataBoundSetter
+    public void setJsonReportDirectory(String jsonReportDirectory) {
+        publisher.setJsonReportDirectory(jsonReportDirectory);
+    }
+
+    public String getJsonReportDirectory() {
+        return publisher.getJsonReportDirectory();
+    }
+
+    @DataBoundSetter
+    public void setFailedStepsNumber(int failedStepsNumber) {
+        publisher.setFailedStepsNumber(failedStepsNumber);
+    }
+
+    public int getFailedStepsNumber() {
+        return publisher.getFailedStepsNumber();
+    }
+
+    @DataBoundSetter
+    public void setSkippedStepsNumber(int skippedStepsNumber) {
+        publisher.setSkippedStepsNumber(skippedStepsNumber);
+    }
+
+    public int getSkippedStepsNumber() {
+        return publisher.getSkippedStepsNumber();
+    }
+
+    @DataBoundSetter
+    public void setPendingStepsNumber(int pendingStepsNumber) {
+        publisher.setPendingStepsNumber(pendingStepsNumber);
+    }
+
+    public int getPendingStepsNumber() {
+        return publisher.getPendingStepsNumber();
+    }
+
+    @DataBoundSetter
+    public void setUndefinedStepsNumber(int undefinedStepsNumber) {
+        publisher.setUndefinedStepsNumber(undefinedStepsNumber);
+    }
+
+    public int getUndefinedStepsNumber() {
+        return publisher.getUndefinedStepsNumber();
+    }
+
+    @DataBoundSetter
+    public void setFailedScenariosNumber(int failedScenariosNumber) {
+        publisher.setFailedScenariosNumber(failedScenariosNumber);
+    }
+
+    public int getFailedScenariosNumber() {
+        return publisher.getFailedScenariosNumber();
+    }
+
+    @DataBoundSetter
+    public void setFailedFeaturesNumber(int failedFeaturesNumber) {
+        publisher.setFailedFeaturesNumber(failedFeaturesNumber);
+    }
+
+    public int getFailedFeaturesNumber() {
+        return publisher.getFailedFeaturesNumber();
+    }
+
+    @DataBoundSetter
+    public void setFailedStepsPercentage(double failedStepsPercentage) {
+        publisher.setFailedStepsPercentage(failedStepsPercentage);
+    }
+
+    public double getFailedStepsPercentage() {
+        return publisher.getFailedStepsPercentage();
+    }
+
+    @DataBoundSetter
+    public void setSkippedStepsPercentage(double skippedStepsPercentage) {
+        publisher.setSkippedStepsPercentage(skippedStepsPercentage);
+    }
+
+    public double getSkippedStepsPercentage() {
+        return publisher.getSkippedStepsPercentage();
+    }
+
+    @DataBoundSetter
+    public void setPendingStepsPercentage(double pendingStepsPercentage) {
+        publisher.setPendingStepsPercentage(pendingStepsPercentage);
+    }
+
+    public double getPendingStepsPercentage() {
+        return publisher.getPendingStepsPercentage();
+    }
+
+    @DataBoundSetter
+    public void setUndefinedStepsPercentage(double undefinedStepsPercentage) {
+        publisher.setUndefinedStepsPercentage(undefinedStepsPercentage);
+    }
+
+    public double getUndefinedStepsPercentage() {
+        return publisher.getUndefinedStepsPercentage();
+    }
+
+    @DataBoundSetter
+    public void setFailedScenariosPercentage(double failedScenariosPercentage) {
+        publisher.setFailedScenariosPercentage(failedScenariosPercentage);
+    }
+
+    public double getFailedScenariosPercentage() {
+        return publisher.getFailedScenariosPercentage();
+    }
+
+    @DataBoundSetter
+    public void setFailedFeaturesPercentage(double failedFeaturesPercentage) {
+        publisher.setFailedFeaturesPercentage(failedFeaturesPercentage);
+    }
+
+    public double getFailedFeaturesPercentage() {
+        return publisher.getFailedFeaturesPercentage();
+    }
+
+    @DataBoundSetter
+    public void setBuildStatus(String buildStatus) {
+        publisher.setBuildStatus(buildStatus);
+    }
+
+    public String getBuildStatus() {
+        return publisher.getBuildStatus();
+    }
+
+    @DataBoundSetter
+    public void setStopBuildOnFailedReport(boolean stopBuildOnFailedReport) {
+        publisher.setStopBuildOnFailedReport(stopBuildOnFailedReport);
+    }
+
+    public boolean getStopBuildOnFailedReport() {
+        return publisher.getStopBuildOnFailedReport();
+    }
+
+    @DataBoundSetter
+    public void setFailedAsNotFailingStatus(boolean failedAsNotFailingStatus) {
+        publisher.setFailedAsNotFailingStatus(failedAsNotFailingStatus);
+    }
+
+    public boolean getFailedAsNotFailingStatus() {
+        return publisher.getFailedAsNotFailingStatus();
+    }
+
+    @DataBoundSetter
+    public void setSkippedAsNotFailingStatus(boolean skippedAsNotFailingStatus) {
+        publisher.setSkippedAsNotFailingStatus(skippedAsNotFailingStatus);
+    }
+
+    public boolean getSkippedAsNotFailingStatus() {
+        return publisher.getSkippedAsNotFailingStatus();
+    }
+
+    @DataBoundSetter
+    public void setPendingAsNotFailingStatus(boolean pendingAsNotFailingStatus) {
+        publisher.setPendingAsNotFailingStatus(pendingAsNotFailingStatus);
+    }
+
+    public boolean getPendingAsNotFailingStatus() {
+        return publisher.getPendingAsNotFailingStatus();
+    }
+
+    @DataBoundSetter
+    public void setUndefinedAsNotFailingStatus(boolean undefinedAsNotFailingStatus) {
+        publisher.setUndefinedAsNotFailingStatus(undefinedAsNotFailingStatus);
+    }
+
+    public boolean getUndefinedAsNotFailingStatus() {
+        return publisher.getUndefinedAsNotFailingStatus();
+    }
+
+    @DataBoundSetter
+    public void setMergeFeaturesById(boolean mergeFeaturesById) {
+        publisher.setMergeFeaturesById(mergeFeaturesById);
+    }
+
+    public boolean getMergeFeaturesById() {
+        return publisher.getMergeFeaturesById();
+    }
+
+    @DataBoundSetter
+    public void setMergeFeaturesWithRetest(boolean mergeFeaturesWithRetest) {
+        publisher.setMergeFeaturesWithRetest(mergeFeaturesWithRetest);
+    }
+
+    public boolean getMergeFeaturesWithRetest() {
+        return publisher.getMergeFeaturesWithRetest();
+    }
+
+    @DataBoundSetter
+    public void setMaxStreamStringLength(int maxStreamStringLength) {
+        publisher.setMaxStreamStringLength(maxStreamStringLength);
+    }
+
+    public int getMaxStreamStringLength() {
+        return publisher.getMaxStreamStringLength();
+    }
+
+    @DataBoundSetter
+    public void setIngestionParallelism(int ingestionParallelism) {
+        publisher.setIngestionParallelism(ingestionParallelism);
+    }
+
+    public int getIngestionParallelism() {
+        return publisher.getIngestionParallelism();
+    }
+
+    @DataBoundSetter
+    public void setScanCache(boolean scanCache) {
+        publisher.setScanCache(scanCache);
+    }
+
+    public boolean getScanCache() {
+        return publisher.getScanCache();
+    }
+
+    @DataBoundSetter
+    public void setSharedWorkspace(boolean sharedWorkspace) {
+        publisher.setSharedWorkspace(sharedWorkspace);
+    }
+
+    public boolean getSharedWorkspace() {
+        return publisher.getSharedWorkspace();
+    }
+
+    @Override
+    public StepExecution start(StepContext context) {
+        return new Execution(context, publisher);
+    }
+
+    private static class Execution extends SynchronousNonBlockingStepExecution<Map<String, Object>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient CucumberReportPublisher publisher;
+
+        Execution(StepContext context, CucumberReportPublisher publisher) {
+            super(context);
+            this.publisher = publisher;
+        }
+
+        @Override
+        protected Map<String, Object> run() throws Exception {
+            publisher.keepBackwardCompatibility();
+            return publisher.evaluateGate(getContext().get(Run.class), getContext().get(FilePath.class), getContext().get(TaskListener.class));
+        }
+    }
+
+    @Extension(optional = true)
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "cucumberGate";
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return Messages.GateStep_DisplayName();
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Set.of(Run.class, FilePath.class, TaskListener.class);
+        }
+
+        // names must refer to the field name
+        @POST
+        public ListBoxModel doFillBuildStatusItems() {
+            return new ListBoxModel(
+                    // default option should be listed first
+                    new ListBoxModel.Option(Messages.BuildStatus_unchanged(), "UNCHANGED"),
+                    new ListBoxModel.Option(Messages.BuildStatus_FAILURE(), Result.FAILURE.toString()),
+                    new ListBoxModel.Option(Messages.BuildStatus_UNSTABLE(), Result.UNSTABLE.toString()));
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package net.masterthought.jenkins;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import net.masterthought.cucumber.json.support.Status;
+
+/**
+ * Reads Cucumber JSON report token by token and reports features, scenarios and steps to the visitor, without
+ * building the model of the report. Values which are not needed (embeddings, outputs, error messages, tags) are
+ * skipped by the parser, so scanning is much cheaper than parsing the report.
+ *
+ * Status of the scenario is the worst status of its steps and hooks (failed, undefined, pending, skipped, passed) and
+ * includes the steps of the background preceding it. Duration of the scenario is the sum of durations of its steps
+ * and hooks, including the background. Backgrounds are reported also as elements on their own, so the report can be
+ * counted the same way as the report generator counts it.
+ */
+public class CucumberJsonScanner {
+
+    /**
+     * Receives elements of the report in the order of the report. Scenarios are reported after the whole feature was
+     * read, as the feature id can follow its elements.
+     */
+    public interface Visitor {
+
+        /**
+         * Called for every step and hook.
+         *
+         * @param location location of the step definition or hook, empty when it is not known
+         * @param name     name of the step, empty for hooks
+         * @param status   result of the step
+         * @param duration duration in nanoseconds
+         * @param hook     {@code true} for hooks
+         */
+        default void step(String location, String name, Status status, long duration, boolean hook) {
+        }
+
+        /**
+         * Called for every background, before {@link #scenario} is called for the scenario which follows it.
+         */
+        default void background(String featureId, String featureName, Scenario background) {
+        }
+
+        /**
+         * Called for every scenario, after {@link #step} was called for all its steps.
+         */
+        default void scenario(String featureId, String featureName, Scenario scenario) {
+        }
+
+        /**
+         * Called for every feature, after {@link #scenario} was called for all its scenarios.
+         */
+        default void feature(String id, String name, Status status, long duration) {
+        }
+    }
+
+    /**
+     * Statuses by their severity.
+     */
+    static final Status[] STATUSES = {Status.PASSED, Status.SKIPPED, Status.PENDING, Status.UNDEFINED, Status.FAILED};
+
+    /**
+     * Scenario or background with the results of its steps and hooks.
+     */
+    public static final class Scenario {
+
+        private String id;
+        private String name;
+        private String type;
+        private String startTime;
+        private long duration;
+        private int statuses;
+        // hooks of the element, without hooks of its steps
+        private int hookStatuses;
+        private long stepDuration;
+        private final int[] steps = new int[STATUSES.length];
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return {@code true} for scenario as the report generator recognizes it, by its type
+         */
+        public boolean isScenario() {
+            return "scenario".equalsIgnoreCase(type);
+        }
+
+        public boolean isBackground() {
+            return "background".equalsIgnoreCase(type);
+        }
+
+        /**
+         * @return start of the scenario as it is written in the report, {@code null} when it is not known
+         */
+        public String getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return the worst status of the steps and hooks, including the background
+         */
+        public Status getStatus() {
+            return STATUSES[31 - Integer.numberOfLeadingZeros(statuses | 1)];
+        }
+
+        /**
+         * Decides the status of the element as the report generator does. Steps with not failing status pass, but any
+         * hook of the element which did not pass fails it. Hooks of the steps and the background preceding the
+         * scenario are not taken into account.
+         *
+         * @param notFailingStatuses statuses of the steps which do not fail the element
+         */
+        public boolean isPassed(Set<Status> notFailingStatuses) {
+            if ((hookStatuses & ~1) != 0) {
+                return false;
+            }
+            for (int i = 1; i < steps.length; i++) {
+                if (steps[i] > 0 && !notFailingStatuses.contains(STATUSES[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return number of steps of the element with given status, hooks and the background are not counted
+         */
+        public int getSteps(Status status) {
+            return steps[severity(status)];
+        }
+
+        /**
+         * @return duration of the steps of the element in nanoseconds, without hooks and the background
+         */
+        public long getStepDuration() {
+            return stepDuration;
+        }
+
+        /**
+         * @return duration of the steps and hooks in nanoseconds, including the background
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        private void add(Status status, long duration, boolean hook) {
+            statuses |= 1 << severity(status);
+            this.duration += duration;
+            if (!hook) {
+                steps[severity(status)]++;
+                stepDuration += duration;
+            }
+        }
+
+        private void addBackground(Scenario background) {
+            statuses |= background.statuses;
+            duration += background.duration;
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            // background does not have to have the id nor the name
+            writeOptional(output, id);
+            writeOptional(output, name);
+            writeOptional(output, type);
+            writeOptional(output, startTime);
+            output.writeLong(duration);
+            output.writeByte(statuses);
+            output.writeByte(hookStatuses);
+            output.writeLong(stepDuration);
+            for (int count : steps) {
+                output.writeInt(count);
+            }
+        }
+
+        static Scenario read(DataInputStream input) throws IOException {
+            Scenario scenario = new Scenario();
+            scenario.id = readOptional(input);
+            scenario.name = readOptional(input);
+            scenario.type = readOptional(input);
+            scenario.startTime = readOptional(input);
+            scenario.duration = input.readLong();
+            scenario.statuses = readStatuses(input);
+            scenario.hookStatuses = readStatuses(input);
+            scenario.stepDuration = input.readLong();
+            for (int i = 0; i < scenario.steps.length; i++) {
+                scenario.steps[i] = input.readInt();
+            }
+            return scenario;
+        }
+
+        private static int readStatuses(DataInputStream input) throws IOException {
+            int statuses = input.readByte();
+            if ((statuses & ~((1 << STATUSES.length) - 1)) != 0) {
+                throw new IOException("Invalid statuses " + statuses);
+            }
+            return statuses;
+        }
+
+        private static void writeOptional(DataOutputStream output, String value) throws IOException {
+            ScenarioHistory.writeString(output, value != null ? value : "");
+        }
+
+        private static String readOptional(DataInputStream input) throws IOException {
+            String value = ScenarioHistory.readString(input);
+            return value.isEmpty() ? null : value;
+        }
+    }
+
+    private final JsonFactory factory;
+
+    /**
+     * @param maxStreamStringLength maximum length of strings, or 0 for Jackson default
+     */
+    public CucumberJsonScanner(int maxStreamStringLength) {
+        factory = new JsonFactory();
+        if (maxStreamStringLength > 0) {
+            factory.setStreamReadConstraints(StreamReadConstraints.builder().maxStringLength(maxStreamStringLength).build());
+        }
+    }
+
+    /**
+     * Scans the report. Empty file is treated as report without features.
+     */
+    public void scan(File file, Visitor visitor) throws IOException {
+        try (JsonParser parser = factory.createParser(file)) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return;
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Array of features expected");
+            }
+            while (nextToken(parser) == JsonToken.START_OBJECT) {
+                scanFeature(parser, visitor);
+            }
+        }
+    }
+
+    private void scanFeature(JsonParser parser, Visitor visitor) throws IOException {
+        String id = null;
+        String name = null;
+        List<Scenario> scenarios = new ArrayList<>();
+        while (nextToken(parser) == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = nextToken(parser);
+            if ("id".equals(field) && value == JsonToken.VALUE_STRING) {
+                id = parser.getText();
+            } else if ("name".equals(field) && value == JsonToken.VALUE_STRING) {
+                name = parser.getText();
+            } else if ("elements".equals(field) && value == JsonToken.START_ARRAY) {
+                while (nextToken(parser) == JsonToken.START_OBJECT) {
+                    scenarios.add(scanElement(parser, visitor));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        String featureId = id != null ? id : "";
+        String featureName = name != null ? name : featureId;
+        Status featureStatus = Status.PASSED;
+        long featureDuration = 0;
+        Scenario background = null;
+        for (Scenario scenario : scenarios) {
+            featureStatus = worse(featureStatus, scenario.getStatus());
+            featureDuration += scenario.duration;
+            if (scenario.isBackground()) {
+                visitor.background(featureId, featureName, scenario);
+                background = scenario;
+                continue;
+            }
+            if (background != null) {
+                scenario.addBackground(background);
+                background = null;
+            }
+            if (scenario.id == null) {
+                scenario.id = featureId + ";" + scenario.name;
+            }
+            if (scenario.name == null) {
+                scenario.name = scenario.id;
+            }
+            visitor.scenario(featureId, featureName, scenario);
+        }
+        visitor.feature(featureId, featureName, featureStatus, featureDuration);
+    }
+
+    private Scenario scanElement(JsonParser parser, Visitor visitor) throws IOException {
+        Scenario scenario = new Scenario();
+        while (nextToken(parser) == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = nextToken(parser);
+            if ("id".equals(field) && value == JsonToken.VALUE_STRING) {
+                scenario.id = parser.getText();
+            } else if ("name".equals(field) && value == JsonToken.VALUE_STRING) {
+                scenario.name = parser.getText();
+            } else if ("type".equals(field) && value == JsonToken.VALUE_STRING) {
+                scenario.type = parser.getText();
+            } else if ("start_timestamp".equals(field) && value == JsonToken.VALUE_STRING) {
+                scenario.startTime = parser.getText();
+            } else if (("steps".equals(field) || "before".equals(field) || "after".equals(field)) && value == JsonToken.START_ARRAY) {
+                boolean hook = !"steps".equals(field);
+                while (nextToken(parser) == JsonToken.START_OBJECT) {
+                    Status status = scanStep(parser, visitor, scenario, hook);
+                    if (hook) {
+                        scenario.hookStatuses |= 1 << severity(status);
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return scenario;
+    }
+
+    /**
+     * Scans step or hook, including hooks executed before and after the step.
+     *
+     * @return status of the step or hook
+     */
+    private Status scanStep(JsonParser parser, Visitor visitor, Scenario scenario, boolean hook) throws IOException {
+        String name = "";
+        String location = "";
+        Status status = Status.UNDEFINED;
+        long duration = 0;
+        while (nextToken(parser) == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = nextToken(parser);
+            if ("name".equals(field) && value == JsonToken.VALUE_STRING) {
+                name = parser.getText();
+            } else if ("result".equals(field) && value == JsonToken.START_OBJECT) {
+                while (nextToken(parser) == JsonToken.FIELD_NAME) {
+                    String resultField = parser.currentName();
+                    JsonToken resultValue = nextToken(parser);
+                    if ("status".equals(resultField) && resultValue == JsonToken.VALUE_STRING) {
+                        status = toStatus(parser.getText());
+                    } else if ("duration".equals(resultField) && resultValue.isNumeric()) {
+                        duration = parser.getLongValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if ("match".equals(field) && value == JsonToken.START_OBJECT) {
+                while (nextToken(parser) == JsonToken.FIELD_NAME) {
+                    String matchField = parser.currentName();
+                    JsonToken matchValue = nextToken(parser);
+                    if ("location".equals(matchField) && matchValue == JsonToken.VALUE_STRING) {
+                        location = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if (("before".equals(field) || "after".equals(field)) && value == JsonToken.START_ARRAY) {
+                while (nextToken(parser) == JsonToken.START_OBJECT) {
+                    scanStep(parser, visitor, scenario, true);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        scenario.add(status, duration, hook);
+        visitor.step(location, name, status, duration, hook);
+        return status;
+    }
+
+    private static Status toStatus(String status) {
+        try {
+            return Status.valueOf(status.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            // e.g. ambiguous steps, which fail the scenario
+            return Status.FAILED;
+        }
+    }
+
+    /**
+     * Orders statuses from the passed to the failed one.
+     */
+    static int severity(Status status) {
+        switch (status) {
+            case FAILED:
+                return 4;
+            case UNDEFINED:
+                return 3;
+            case PENDING:
+                return 2;
+            case SKIPPED:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Reads the status written as its severity.
+     *
+     * @throws IOException when the value is not a severity of any status
+     */
+    static Status readStatus(DataInputStream input) throws IOException {
+        int severity = input.readByte();
+        if (severity < 0 || severity >= STATUSES.length) {
+            throw new IOException("Invalid status " + severity);
+        }
+        return STATUSES[severity];
+    }
+
+    private static Status worse(Status first, Status second) {
+        return severity(second) > severity(first) ? second : first;
+    }
+
+    private static JsonToken nextToken(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            throw new JsonParseException(parser, "Unexpected end of JSON content");
+        }
+        return token;
+    }
+}
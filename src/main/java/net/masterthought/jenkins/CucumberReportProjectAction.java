@@ -1,12 +1,29 @@
 package net.masterthought.jenkins;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Item;
 import hudson.model.Job;
 import hudson.model.ProminentProjectAction;
 import hudson.model.Run;
+import hudson.util.HttpResponses;
 import net.masterthought.cucumber.ReportBuilder;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
 public class CucumberReportProjectAction extends CucumberReportBaseAction implements ProminentProjectAction {
 
+    static final int DEFAULT_FLAKINESS_LIMIT = 100;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     private final Job<?, ?> project;
     private String reportTitle;
     private String directorySuffix;
@@ -19,17 +36,65 @@ public class CucumberReportProjectAction extends CucumberReportBaseAction implem
 
     @Override
     public String getUrlName() {
-        Run<?, ?> run = this.project.getLastCompletedBuild();
-        if (run != null) {
-            return run.getNumber() + "/" + ReportBuilder.BASE_DIRECTORY + directorySuffix + "/" + ReportBuilder.HOME_PAGE;
-        }
-
-        // none build was completed, report is yet not available
-        return "";
+        // the same as of the report of the build, the latest report is found only when the link is opened
+        return ReportBuilder.BASE_DIRECTORY + directorySuffix;
     }
 
     @Override
     public String getDisplayName() {
         return reportTitle;
     }
-}
\ No newline at end of file
+
+    public Job<?, ?> getProject() {
+        return project;
+    }
+
+    /**
+     * Redirects to the report of the last completed build.
+     */
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Run<?, ?> run = this.project.getLastCompletedBuild();
+        if (run == null) {
+            // none build was completed, report is yet not available
+            rsp.sendError(StaplerResponse.SC_NOT_FOUND);
+            return;
+        }
+        rsp.sendRedirect2(req.getContextPath() + "/" + run.getUrl() + getUrlName() + "/" + ReportBuilder.HOME_PAGE);
+    }
+
+    /**
+     * Starts rebuild of the trends from the builds of the project in the background.
+     */
+    @RequirePOST
+    public HttpResponse doRebuildTrends() {
+        project.checkPermission(Item.CONFIGURE);
+        TrendsRebuild.start(project, getUrlName(), getTrendsDirectory());
+        return HttpResponses.redirectTo("..");
+    }
+
+    /**
+     * Writes statistics of the scenarios from the most flaky one in JSON.
+     *
+     * @param builds number of the last builds to include, 0 for all builds in the history
+     * @param limit  maximum number of scenarios, 0 for {@link #DEFAULT_FLAKINESS_LIMIT}
+     */
+    public void doFlakiness(StaplerResponse rsp, @QueryParameter int builds, @QueryParameter int limit) throws IOException {
+        project.checkPermission(Item.READ);
+        List<ScenarioHistory.Statistics> statistics = new ScenarioHistory(getTrendsDirectory()).query(builds);
+        int maxScenarios = limit > 0 ? limit : DEFAULT_FLAKINESS_LIMIT;
+        rsp.setContentType("application/json;charset=UTF-8");
+        MAPPER.writeValue(rsp.getOutputStream(), statistics.subList(0, Math.min(maxScenarios, statistics.size())));
+    }
+
+    /**
+     * @return the last rebuild of the trends, presented on the project page
+     */
+    @CheckForNull
+    public TrendsRebuild getTrendsRebuild() {
+        return TrendsRebuild.get(getTrendsDirectory());
+    }
+
+    private File getTrendsDirectory() {
+        return CucumberReportPublisher.getTrendsDirectory(project, directorySuffix);
+    }
+}
@@ -1,17 +1,29 @@
 package net.masterthought.jenkins;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.AbortException;
 import hudson.Extension;
@@ -19,12 +31,17 @@ import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
+import hudson.model.Job;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.slaves.WorkspaceList;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Recorder;
+import hudson.util.LogTaskListener;
+import hudson.util.StreamTaskListener;
 import jenkins.tasks.SimpleBuildStep;
+import jenkins.util.SystemProperties;
 import net.masterthought.cucumber.Configuration;
 import net.masterthought.cucumber.ReportBuilder;
 import net.masterthought.cucumber.Reportable;
@@ -34,8 +51,8 @@ import net.masterthought.cucumber.reducers.ReducingMethod;
 import net.masterthought.cucumber.sorting.SortingMethod;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.tools.ant.DirectoryScanner;
 import org.jenkinsci.Symbol;
 import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
 import org.jenkinsci.plugins.tokenmacro.TokenMacro;
@@ -44,12 +61,28 @@ import org.kohsuke.stapler.DataBoundSetter;
 
 public class CucumberReportPublisher extends Recorder implements SimpleBuildStep {
 
+    private static final Logger LOGGER = Logger.getLogger(CucumberReportPublisher.class.getName());
+
     private final static String DEFAULT_FILE_INCLUDE_PATTERN_JSONS = "**/*.json";
-    private final static String DEFAULT_FILE_INCLUDE_PATTERN_CLASSIFICATIONS = "**/*.properties";
+
+    // categories of files found in the workspace
+    private final static String JSON_FILES = "json";
+    private final static String CLASSIFICATION_FILES = "classifications";
+    private final static String CUSTOM_JS_FILES = "js";
+    private final static String CUSTOM_CSS_FILES = "css";
 
     private final static String TRENDS_DIR = "cucumber-reports";
     private final static String TRENDS_FILE = "cucumber-trends.json";
 
+    private final static int DEFAULT_DURATION_BASELINE_PERCENTILE = 90;
+    private final static int MAX_LOGGED_REGRESSIONS = 20;
+
+    /**
+     * Whether input files are read where they are when the controller can access them. Can be disabled when the files
+     * in the workspace are changed while the report is generated.
+     */
+    static final boolean READ_IN_PLACE = SystemProperties.getBoolean(CucumberReportPublisher.class.getName() + ".readInPlace", true);
+
     private final String fileIncludePattern;
     private String fileExcludePattern = "";
     private String jsonReportDirectory = "";
@@ -93,6 +126,25 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
 
     private int maxStreamStringLength;
 
+    private boolean parseOnAgent;
+    private boolean streamingIngestion;
+    private int ingestionParallelism;
+    private boolean precompressReport;
+    private boolean packReport;
+    private boolean shareStaticAssets;
+    private boolean scenarioHistory;
+    private double durationRegressionPercentage;
+    private int durationBaselinePercentile;
+    private boolean failOnDurationRegression;
+    private boolean stepHotspots;
+    private boolean gateOnly;
+    private boolean deferredRendering;
+    private boolean scanCache;
+    private boolean sharedWorkspace;
+    private boolean externalizeEmbeddings;
+    private int embeddingsBudget;
+    private boolean embeddingsOnlyForFailedScenarios;
+
     @DataBoundConstructor
     public CucumberReportPublisher(String fileIncludePattern) {
         this.fileIncludePattern = fileIncludePattern;
@@ -391,6 +443,168 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
         return maxStreamStringLength;
     }
 
+    @DataBoundSetter
+    public void setParseOnAgent(boolean parseOnAgent) {
+        this.parseOnAgent = parseOnAgent;
+    }
+
+    public boolean getParseOnAgent() {
+        return parseOnAgent;
+    }
+
+    @DataBoundSetter
+    public void setStreamingIngestion(boolean streamingIngestion) {
+        this.streamingIngestion = streamingIngestion;
+    }
+
+    public boolean getStreamingIngestion() {
+        return streamingIngestion;
+    }
+
+    @DataBoundSetter
+    public void setIngestionParallelism(int ingestionParallelism) {
+        this.ingestionParallelism = ingestionParallelism;
+    }
+
+    public int getIngestionParallelism() {
+        return ingestionParallelism;
+    }
+
+    @DataBoundSetter
+    public void setPrecompressReport(boolean precompressReport) {
+        this.precompressReport = precompressReport;
+    }
+
+    public boolean getPrecompressReport() {
+        return precompressReport;
+    }
+
+    @DataBoundSetter
+    public void setPackReport(boolean packReport) {
+        this.packReport = packReport;
+    }
+
+    public boolean getPackReport() {
+        return packReport;
+    }
+
+    @DataBoundSetter
+    public void setShareStaticAssets(boolean shareStaticAssets) {
+        this.shareStaticAssets = shareStaticAssets;
+    }
+
+    public boolean getShareStaticAssets() {
+        return shareStaticAssets;
+    }
+
+    @DataBoundSetter
+    public void setScenarioHistory(boolean scenarioHistory) {
+        this.scenarioHistory = scenarioHistory;
+    }
+
+    public boolean getScenarioHistory() {
+        return scenarioHistory;
+    }
+
+    @DataBoundSetter
+    public void setDurationRegressionPercentage(double durationRegressionPercentage) {
+        this.durationRegressionPercentage = durationRegressionPercentage;
+    }
+
+    public double getDurationRegressionPercentage() {
+        return durationRegressionPercentage;
+    }
+
+    @DataBoundSetter
+    public void setDurationBaselinePercentile(int durationBaselinePercentile) {
+        this.durationBaselinePercentile = durationBaselinePercentile;
+    }
+
+    public int getDurationBaselinePercentile() {
+        return durationBaselinePercentile;
+    }
+
+    @DataBoundSetter
+    public void setFailOnDurationRegression(boolean failOnDurationRegression) {
+        this.failOnDurationRegression = failOnDurationRegression;
+    }
+
+    public boolean getFailOnDurationRegression() {
+        return failOnDurationRegression;
+    }
+
+    @DataBoundSetter
+    public void setStepHotspots(boolean stepHotspots) {
+        this.stepHotspots = stepHotspots;
+    }
+
+    public boolean getStepHotspots() {
+        return stepHotspots;
+    }
+
+    @DataBoundSetter
+    public void setGateOnly(boolean gateOnly) {
+        this.gateOnly = gateOnly;
+    }
+
+    public boolean getGateOnly() {
+        return gateOnly;
+    }
+
+    @DataBoundSetter
+    public void setDeferredRendering(boolean deferredRendering) {
+        this.deferredRendering = deferredRendering;
+    }
+
+    public boolean getDeferredRendering() {
+        return deferredRendering;
+    }
+
+    @DataBoundSetter
+    public void setScanCache(boolean scanCache) {
+        this.scanCache = scanCache;
+    }
+
+    public boolean getScanCache() {
+        return scanCache;
+    }
+
+    @DataBoundSetter
+    public void setSharedWorkspace(boolean sharedWorkspace) {
+        this.sharedWorkspace = sharedWorkspace;
+    }
+
+    public boolean getSharedWorkspace() {
+        return sharedWorkspace;
+    }
+
+    @DataBoundSetter
+    public void setExternalizeEmbeddings(boolean externalizeEmbeddings) {
+        this.externalizeEmbeddings = externalizeEmbeddings;
+    }
+
+    public boolean getExternalizeEmbeddings() {
+        return externalizeEmbeddings;
+    }
+
+    @DataBoundSetter
+    public void setEmbeddingsBudget(int embeddingsBudget) {
+        this.embeddingsBudget = embeddingsBudget;
+    }
+
+    public int getEmbeddingsBudget() {
+        return embeddingsBudget;
+    }
+
+    @DataBoundSetter
+    public void setEmbeddingsOnlyForFailedScenarios(boolean embeddingsOnlyForFailedScenarios) {
+        this.embeddingsOnlyForFailedScenarios = embeddingsOnlyForFailedScenarios;
+    }
+
+    public boolean getEmbeddingsOnlyForFailedScenarios() {
+        return embeddingsOnlyForFailedScenarios;
+    }
+
     @DataBoundSetter
     public void setMergeFeaturesById(boolean mergeFeaturesById) {
         this.mergeFeaturesById = mergeFeaturesById;
@@ -442,9 +656,25 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
 
         keepBackwardCompatibility();
 
-        generateReport(run, workspace, listener);
+        if (gateOnly) {
+            evaluateGate(run, workspace, listener);
+            return;
+        }
+
+        if (deferredRendering) {
+            generateDeferredReport(run, workspace, listener);
+            return;
+        }
+
+        ReportSummary summary = generateReport(run, workspace, listener);
 
-        SafeArchiveServingRunAction caa = new SafeArchiveServingRunAction(
+        SafeArchiveServingRunAction caa = createAction(run);
+        caa.setSummary(summary);
+        run.addAction(caa);
+    }
+
+    private SafeArchiveServingRunAction createAction(Run<?, ?> run) {
+        return new SafeArchiveServingRunAction(
                 run,
                 new File(run.getRootDir(), ReportBuilder.BASE_DIRECTORY + getDirectorySuffixWithSeparator()),
                 ReportBuilder.BASE_DIRECTORY + getDirectorySuffixWithSeparator(),
@@ -453,19 +683,127 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
                 getActionName(),
                 getDirectorySuffixWithSeparator()
         );
-        run.addAction(caa);
     }
 
     private String getActionName() {
         return StringUtils.isEmpty(reportTitle) ? Messages.SidePanel_DisplayNameNoTitle() : String.format(Messages.SidePanel_DisplayName(), reportTitle);
     }
 
-    private void generateReport(Run<?, ?> build, FilePath workspace, TaskListener listener) throws InterruptedException, IOException {
+    /**
+     * Directory of the job where trends of the report with given suffix are stored.
+     */
+    static File getTrendsDirectory(Job<?, ?> job, String directorySuffixWithSeparator) {
+        return new File(job.getRootDir(), TRENDS_DIR + directorySuffixWithSeparator);
+    }
+
+    /**
+     * Files and settings of the report which are collected from the workspace, so the report can be rendered after
+     * the workspace is not available anymore.
+     */
+    private static final class PreparedReport {
+
+        private final File trendsDirectory;
+        private final File directoryForReport;
+        private final File directoryCache;
+        private final List<String> jsonFiles;
+        private final Configuration configuration;
+        @CheckForNull
+        private final ReportScan scan;
+
+        PreparedReport(File trendsDirectory, File directoryForReport, File directoryCache, List<String> jsonFiles,
+                       Configuration configuration, @CheckForNull ReportScan scan) {
+            this.trendsDirectory = trendsDirectory;
+            this.directoryForReport = directoryForReport;
+            this.directoryCache = directoryCache;
+            this.jsonFiles = jsonFiles;
+            this.configuration = configuration;
+            this.scan = scan;
+        }
+    }
+
+    private ReportSummary generateReport(Run<?, ?> build, FilePath workspace, TaskListener listener) throws InterruptedException, IOException {
+        PreparedReport report = prepareReport(build, workspace, listener);
+        List<DurationRegression.Regression> regressions = updateHistory(build, listener, report);
+        ReportSummary summary = renderReport(build, listener, report);
+
+        boolean reportFailed = hasReportFailed(summary, listener);
+        if (failOnDurationRegression && !regressions.isEmpty()) {
+            log(listener, String.format("%d scenarios and features took longer than allowed", regressions.size()));
+            reportFailed = true;
+        }
+        if (reportFailed) {
+            handleFailedReport(build, listener);
+        }
+        return summary;
+    }
+
+    /**
+     * Evaluates thresholds of the report from the scanned JSON files and leaves rendering of the report to the
+     * background, so the executor of the build is not occupied by it. The report is added to the build immediately
+     * and is presented as being rendered until it is ready.
+     */
+    private void generateDeferredReport(Run<?, ?> run, FilePath workspace, TaskListener listener) throws InterruptedException, IOException {
+        PreparedReport report = prepareReport(run, workspace, listener);
+        List<DurationRegression.Regression> regressions = updateHistory(run, listener, report);
+        ReportSummary summary = getScannedSummary(report.scan);
+
+        SafeArchiveServingRunAction caa = createAction(run);
+        caa.setSummary(summary);
+        caa.setRendering(true);
+        run.addAction(caa);
+        // build log is closed when the build completes, so the background rendering logs into the file next to the
+        // report, which is linked from the report until it is ready, and into the system log only at fine level
+        StreamTaskListener renderingListener = new StreamTaskListener(new TeeOutputStream(
+                new FileOutputStream(caa.getRenderingLogFile()), new LogTaskListener(LOGGER, Level.FINE).getLogger()),
+                StandardCharsets.UTF_8);
+        boolean queued = false;
+        try {
+            queued = ReportRenderingExecutor.submit(run, caa, () -> {
+                try {
+                    return renderReport(run, renderingListener, report);
+                } finally {
+                    FileUtils.deleteQuietly(report.directoryCache);
+                    renderingListener.close();
+                }
+            });
+        } finally {
+            if (!queued) {
+                renderingListener.close();
+            }
+        }
+        if (queued) {
+            log(listener, "Report is rendered in the background, build result is evaluated from the JSON files");
+        } else {
+            log(listener, "Too many reports are waiting to be rendered in the background, report is rendered by the build");
+            FileUtils.deleteQuietly(caa.getRenderingLogFile());
+            ReportRenderingExecutor.render(run, caa, () -> {
+                try {
+                    return renderReport(run, listener, report);
+                } finally {
+                    FileUtils.deleteQuietly(report.directoryCache);
+                }
+            });
+        }
+
+        boolean reportFailed = hasReportFailed(summary, listener);
+        if (failOnDurationRegression && !regressions.isEmpty()) {
+            log(listener, String.format("%d scenarios and features took longer than allowed", regressions.size()));
+            reportFailed = true;
+        }
+        if (reportFailed) {
+            handleFailedReport(run, listener);
+        }
+    }
+
+    /**
+     * Copies JSON and other files from the workspace and prepares the configuration of the report.
+     */
+    private PreparedReport prepareReport(Run<?, ?> build, FilePath workspace, TaskListener listener) throws InterruptedException, IOException {
 
         log(listener, "Using Cucumber Reports version " + getPomVersion(listener));
 
         // create directory where trends will be stored
-        final File trendsDir = new File(build.getParent().getRootDir(), TRENDS_DIR + getDirectorySuffixWithSeparator());
+        final File trendsDir = getTrendsDirectory(build.getParent(), getDirectorySuffixWithSeparator());
         if (!trendsDir.exists() && !trendsDir.mkdirs()) {
             throw new IllegalStateException("Could not create directory for trends: " + trendsDir);
         }
@@ -478,7 +816,7 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
         File directoryForReport = build.getRootDir();
         File directoryCache = new File(
                 directoryForReport,
-                ReportBuilder.BASE_DIRECTORY + getDirectorySuffixWithSeparator() + File.separatorChar + ".cache"
+                ReportBuilder.BASE_DIRECTORY + getDirectorySuffixWithSeparator() + File.separatorChar + SafeArchiveServingRunAction.CACHE_DIRECTORY
         );
 
         if (directoryCache.exists()) {
@@ -487,39 +825,58 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
             throw new IllegalStateException("Could not create directory for cache: " + directoryCache);
         }
 
-        // copies Classifications files to cache...
-        int copiedFilesProperties = inputReportDirectory.copyRecursiveTo(DEFAULT_FILE_INCLUDE_PATTERN_CLASSIFICATIONS, new FilePath(directoryCache));
-        log(listener, String.format("Copied %d properties files from workspace \"%s\" to reports directory \"%s\"",
-                copiedFilesProperties, inputReportDirectory.getRemote(), directoryCache));
-
-        // copies custom JS and CSS files to cache...
-        List<String> cachedCustomJsFiles = new ArrayList<>();
-        if (StringUtils.isNotEmpty(customJsFiles)) {
-            cachedCustomJsFiles.addAll(copyFilesAndGetList(listener,
-                    workspace,
-                    directoryCache,
-                    customJsFiles,
-                    null)
-            );
-        }
-        List<String> cachedCustomCssFiles = new ArrayList<>();
-        if (StringUtils.isNotEmpty(customCssFiles)) {
-            cachedCustomCssFiles.addAll(copyFilesAndGetList(listener,
-                    workspace,
-                    directoryCache,
-                    customCssFiles,
-                    null)
-            );
+        // input files are read where they are when the controller can access them, otherwise they are copied
+        File inputDirectory = getInPlaceDirectory(inputReportDirectory, listener);
+        FileFinder customFilesFinder = addCustomFiles(new FileFinder());
+        File customFilesDirectory;
+        Map<String, List<String>> inputFiles;
+        Map<String, List<String>> customFiles;
+        if (inputDirectory != null) {
+            log(listener, String.format("Reading files in place from \"%s\"", inputDirectory));
+            inputFiles = createInputFinder().find(inputDirectory);
+            customFilesDirectory = new File(workspace.getRemote());
+            customFiles = customFilesFinder.find(customFilesDirectory);
+        } else {
+            if (parseOnAgent) {
+                // copies JSON and classifications files to cache using single compressed stream...
+                transferReducedFiles(listener, workspace, inputReportDirectory, directoryCache);
+            } else {
+                transferFiles(listener, inputReportDirectory, directoryCache, createInputFinder());
+            }
+            // copies custom JS and CSS files to cache...
+            if (!customFilesFinder.isEmpty()) {
+                transferFiles(listener, workspace, directoryCache, customFilesFinder);
+            }
+            inputDirectory = directoryCache;
+            customFilesDirectory = directoryCache;
+            // all files are in the cache now, so they are found in one walk
+            inputFiles = addCustomFiles(createInputFinder()).find(directoryCache);
+            customFiles = inputFiles;
         }
 
-        // copies JSON files to cache and
+        List<String> cachedCustomJsFiles = getFilesInside(
+                customFiles.getOrDefault(CUSTOM_JS_FILES, Collections.emptyList()), customFilesDirectory, listener);
+        List<String> cachedCustomCssFiles = getFilesInside(
+                customFiles.getOrDefault(CUSTOM_CSS_FILES, Collections.emptyList()), customFilesDirectory, listener);
+
         // exclude JSONs that should be skipped (as configured by the user)
-        List<String> jsonFilesToProcess = copyFilesAndGetList(listener, inputReportDirectory, directoryCache, fileIncludePattern, fileExcludePattern);
+        List<String> jsonFilesToProcess = getFilesInside(inputFiles.get(JSON_FILES), inputDirectory, listener);
         log(listener, String.format("Processing %d json files:", jsonFilesToProcess.size()));
         for (String jsonFile : jsonFilesToProcess) {
             log(listener, jsonFile);
         }
 
+        if (isStreamed()) {
+            File directoryForEmbeddings = new File(directoryForReport,
+                    ReportBuilder.BASE_DIRECTORY + getDirectorySuffixWithSeparator() + File.separatorChar + JsonReportStreamer.EMBEDDINGS_DIRECTORY);
+            jsonFilesToProcess = streamJsonFiles(listener, jsonFilesToProcess, new File(directoryCache, ".streamed"), directoryForEmbeddings);
+        }
+
+        ReportScan scan = null;
+        if (isHistoryKept() || stepHotspots || deferredRendering) {
+            scan = scanJsonFiles(listener, jsonFilesToProcess, trendsDir);
+        }
+
         String buildNumber = Integer.toString(build.getNumber());
         // this works for normal and multi-config/matrix jobs
         // for matrix jobs, this will include the matrix job name and the specific
@@ -530,7 +887,6 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
         Configuration configuration = new Configuration(directoryForReport, projectName);
         configuration.setBuildNumber(buildNumber);
         configuration.setDirectorySuffix(getDirectorySuffix());
-        configuration.setTrends(new File(trendsDir, TRENDS_FILE), trendsLimit);
         configuration.setSortingMethod(SortingMethod.valueOf(sortingMethod));
         if (mergeFeaturesById) {
             configuration.addReducingMethod(ReducingMethod.MERGE_FEATURES_BY_ID);
@@ -563,7 +919,8 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
             configuration.addCustomCssFiles(cachedCustomCssFiles);
         }
 
-        List<String> classificationFiles = fetchPropertyFiles(directoryCache, listener);
+        List<String> classificationFiles = fetchPropertyFiles(
+                inputFiles.getOrDefault(CLASSIFICATION_FILES, Collections.emptyList()), inputDirectory, listener);
         if (CollectionUtils.isNotEmpty(classificationFiles)) {
             configuration.addClassificationFiles(classificationFiles);
         }
@@ -574,34 +931,346 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
 
         setFailingStatuses(configuration);
 
-        ReportBuilder reportBuilder = new ReportBuilder(jsonFilesToProcess, configuration);
-        Reportable result = reportBuilder.generateReports();
+        return new PreparedReport(trendsDir, directoryForReport, directoryCache, jsonFilesToProcess, configuration, scan);
+    }
 
-        if (hasReportFailed(result, listener)) {
-            // redefine build result if it was provided by plugin configuration
-            if (Result.FAILURE.toString().equals(buildStatus) || Result.UNSTABLE.toString().equals(buildStatus)) {
-                log(listener, "Build status is changed to " + buildStatus);
-                build.setResult(Result.fromString(buildStatus));
-            } else {
-                log(listener, "Build status is left unchanged");
+    private boolean isStreamed() {
+        // embeddings are stored or dropped only while the reports are streamed
+        return streamingIngestion || externalizeEmbeddings || embeddingsBudget > 0 || embeddingsOnlyForFailedScenarios;
+    }
+
+    private boolean isHistoryKept() {
+        // history is needed to find durations which regressed, even when it is not kept for its own sake
+        return scenarioHistory || durationRegressionPercentage > 0;
+    }
+
+    /**
+     * Stores outcomes of the scenarios and features of the build in their history.
+     *
+     * @return scenarios and features which took longer than they did in previous builds
+     */
+    private List<DurationRegression.Regression> updateHistory(Run<?, ?> build, TaskListener listener, PreparedReport report) throws IOException {
+        List<DurationRegression.Regression> regressions = new ArrayList<>();
+        ReportScan scan = report.scan;
+        if (isHistoryKept() && scan != null) {
+            ScenarioHistory historyOfScenarios = new ScenarioHistory(report.trendsDirectory);
+            ScenarioHistory historyOfFeatures = ScenarioHistory.ofFeatures(report.trendsDirectory);
+            if (durationRegressionPercentage > 0) {
+                // baseline comes from the previous builds only, so it is computed before this build is appended
+                int percentile = durationBaselinePercentile > 0 ? Math.min(durationBaselinePercentile, 100) : DEFAULT_DURATION_BASELINE_PERCENTILE;
+                regressions.addAll(DurationRegression.find("Feature", historyOfFeatures, scan.getFeatures(), percentile, durationRegressionPercentage));
+                regressions.addAll(DurationRegression.find("Scenario", historyOfScenarios, scan.getScenarios(), percentile, durationRegressionPercentage));
+                logRegressions(listener, regressions, percentile);
             }
 
-            if (stopBuildOnFailedReport) {
-                throw new AbortException(Messages.StopBuildOnFailedReport_FailNote());
+            ScenarioHistory.writeBuildFile(new File(report.directoryForReport,
+                    ReportBuilder.BASE_DIRECTORY + getDirectorySuffixWithSeparator() + ScenarioHistory.BUILD_FILE_EXTENSION), scan.getScenarios());
+            historyOfScenarios.append(build.getNumber(), scan.getScenarios());
+            historyOfScenarios.compact(ScenarioHistory.MAX_BUILDS);
+            historyOfFeatures.append(build.getNumber(), scan.getFeatures());
+            historyOfFeatures.compact(ScenarioHistory.MAX_BUILDS);
+        }
+        return regressions;
+    }
+
+    /**
+     * Generates pages of the report and stores its numbers in the trends.
+     *
+     * @return summary of the report, {@code null} when the report could not be generated
+     */
+    @CheckForNull
+    private ReportSummary renderReport(Run<?, ?> build, TaskListener listener, PreparedReport report) throws IOException, InterruptedException {
+        File directoryCache = report.directoryCache;
+        Configuration configuration = report.configuration;
+
+        // history is kept in the log, report generator gets only the copy with last builds it is going to present
+        TrendsStore trendsStore = new TrendsStore(new File(report.trendsDirectory, TrendsStore.LOG_FILE));
+        File trendsFile = new File(directoryCache, TRENDS_FILE);
+        if (trendsLimit > -1) {
+            if (trendsStore.migrate(new File(report.trendsDirectory, TRENDS_FILE))) {
+                log(listener, "Trends were imported from " + TRENDS_FILE + " into " + TrendsStore.LOG_FILE);
             }
+            trendsStore.writeJson(trendsFile, trendsLimit);
+        }
+        configuration.setTrends(trendsFile, trendsLimit);
+
+        ReportBuilder reportBuilder = new ReportBuilder(report.jsonFiles, configuration);
+        Reportable result = reportBuilder.generateReports();
+
+        // happens when the report could not be generated
+        ReportSummary summary = result == null ? null : ReportSummary.of(result);
+        if (trendsLimit > -1 && summary != null) {
+            trendsStore.append(build.getNumber(), summary);
+            trendsStore.compact(trendsLimit);
+        }
+        File directoryForHtml = new File(report.directoryForReport, ReportBuilder.BASE_DIRECTORY + getDirectorySuffixWithSeparator());
+        if (stepHotspots && report.scan != null) {
+            StepHotspots steps = report.scan.getSteps();
+            steps.writeJson(new File(directoryForHtml, StepHotspots.JSON_FILE));
+            steps.writeHtml(new File(directoryForHtml, StepHotspots.HTML_FILE), "Step definitions of " + getActionName());
+            log(listener, String.format("Aggregated %d step executions of %d step definitions into %s",
+                    steps.getExecutions(), steps.size(), StepHotspots.HTML_FILE));
+        }
+        if (precompressReport) {
+            log(listener, ReportCompressor.compress(directoryForHtml, ingestionParallelism).toString());
+        }
+        if (packReport) {
+            log(listener, ReportPack.pack(directoryForHtml).toString());
+        } else if (shareStaticAssets) {
+            log(listener, SharedAssetStore.share(directoryForHtml, SharedAssetStore.getStoreDirectory()).toString());
         }
 
         // removes cache which may run out of the free space on storage
         FileUtils.deleteQuietly(directoryCache);
+        return summary;
+    }
+
+    /**
+     * Evaluates thresholds of the report without generating it. JSON files are only scanned, so the build gets its
+     * result in a fraction of time needed to render the report.
+     *
+     * @return numbers of the report, together with the information whether it has failed
+     */
+    Map<String, Object> evaluateGate(Run<?, ?> build, FilePath workspace, TaskListener listener) throws InterruptedException, IOException {
+        String parsedJsonReportDirectory = evaluateMacro(build, workspace, listener, jsonReportDirectory);
+        log(listener, String.format("JSON report directory is \"%s\"", parsedJsonReportDirectory));
+        FilePath inputReportDirectory = new FilePath(workspace, parsedJsonReportDirectory);
+
+        File directoryForReport = new File(build.getRootDir(), ReportBuilder.BASE_DIRECTORY + getDirectorySuffixWithSeparator());
+        File directoryCache = new File(directoryForReport, ".gate-" + UUID.randomUUID());
+        if (!directoryCache.mkdirs()) {
+            throw new IllegalStateException("Could not create directory for cache: " + directoryCache);
+        }
+        try {
+            FileFinder jsonFinder = new FileFinder().add(JSON_FILES, getJsonIncludePattern(), fileExcludePattern, true);
+            File inputDirectory = getInPlaceDirectory(inputReportDirectory, listener);
+            if (inputDirectory != null) {
+                log(listener, String.format("Reading files in place from \"%s\"", inputDirectory));
+            } else {
+                transferFiles(listener, inputReportDirectory, directoryCache, jsonFinder);
+                inputDirectory = directoryCache;
+            }
+            List<String> jsonFilesToProcess = getFilesInside(jsonFinder.find(inputDirectory).get(JSON_FILES), inputDirectory, listener);
+            ReportScan scan = scanJsonFiles(listener, jsonFilesToProcess, getTrendsDirectory(build.getParent(), getDirectorySuffixWithSeparator()));
+
+            ReportSummary summary = getScannedSummary(scan);
+            if (summary != null) {
+                log(listener, String.format("Found %d features (%d failed), %d scenarios (%d failed) and %d steps (%d failed, %d skipped, %d pending, %d undefined)",
+                        summary.getFeatures(), summary.getFailedFeatures(), summary.getScenarios(), summary.getFailedScenarios(),
+                        summary.getSteps(), summary.getFailedSteps(), summary.getSkippedSteps(), summary.getPendingSteps(), summary.getUndefinedSteps()));
+            }
+
+            boolean reportFailed = hasReportFailed(summary, listener);
+            Map<String, Object> gate = summary != null ? summary.toMap() : new LinkedHashMap<>();
+            gate.put("failed", reportFailed);
+            if (reportFailed) {
+                handleFailedReport(build, listener);
+            }
+            return gate;
+        } finally {
+            FileUtils.deleteQuietly(directoryCache);
+            // nothing else is stored when the report is not generated
+            String[] reportFiles = directoryForReport.list();
+            if (reportFiles != null && reportFiles.length == 0) {
+                FileUtils.deleteQuietly(directoryForReport);
+            }
+        }
+    }
+
+    private void handleFailedReport(Run<?, ?> build, TaskListener listener) throws AbortException {
+        // redefine build result if it was provided by plugin configuration
+        if (Result.FAILURE.toString().equals(buildStatus) || Result.UNSTABLE.toString().equals(buildStatus)) {
+            log(listener, "Build status is changed to " + buildStatus);
+            build.setResult(Result.fromString(buildStatus));
+        } else {
+            log(listener, "Build status is left unchanged");
+        }
+
+        if (stopBuildOnFailedReport) {
+            throw new AbortException(Messages.StopBuildOnFailedReport_FailNote());
+        }
+    }
+
+    /**
+     * Copies files found by the finder into target directory. Files are searched, archived and compressed on the agent
+     * and transferred as one stream so the remoting channel is not involved for every single file.
+     */
+    private void transferFiles(TaskListener listener, FilePath inputDirectory, File targetDirectory, FileFinder finder)
+            throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        long sizeBefore = FileUtils.sizeOfDirectory(targetDirectory);
+
+        int count = inputDirectory.copyRecursiveTo(finder.toDirScanner(), new FilePath(targetDirectory),
+                "Cucumber report files", FilePath.TarCompression.GZIP);
+
+        long transferredBytes = FileUtils.sizeOfDirectory(targetDirectory) - sizeBefore;
+        log(listener, String.format("Copied %d files (%d bytes) from workspace \"%s\" to reports directory \"%s\" in %d ms",
+                count, transferredBytes, inputDirectory.getRemote(), targetDirectory, System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * Parses and reduces JSON files on the node where they are located and transfers only the result of the reduction.
+     */
+    private void transferReducedFiles(TaskListener listener, FilePath workspace, FilePath inputDirectory, File targetDirectory)
+            throws IOException, InterruptedException {
+        FilePath tempDirectory = WorkspaceList.tempDir(workspace);
+        if (tempDirectory == null) {
+            throw new IllegalStateException("Could not find temporary directory for workspace " + workspace.getRemote());
+        }
+        FilePath reducedDirectory = tempDirectory.child(ReportBuilder.BASE_DIRECTORY + "-" + UUID.randomUUID());
+        reducedDirectory.mkdirs();
+        try {
+            JsonReportsReducer.Result result = inputDirectory.act(new JsonReportsReducer(
+                    reducedDirectory.getRemote(),
+                    getJsonIncludePattern(),
+                    fileExcludePattern,
+                    classificationsFilePattern,
+                    skipEmptyJSONFiles,
+                    mergeFeaturesById,
+                    maxStreamStringLength));
+            log(listener, result.toString());
+            for (String invalidFile : result.getInvalidFiles()) {
+                log(listener, invalidFile);
+            }
+
+            transferFiles(listener, reducedDirectory, targetDirectory, createInputFinder());
+        } finally {
+            reducedDirectory.deleteRecursive();
+        }
+    }
+
+    /**
+     * Rewrites JSON files so large embeddings are stored directly in the report and are not loaded into memory
+     * when the report is parsed.
+     *
+     * @return paths of the files that should be parsed
+     */
+    private List<String> streamJsonFiles(TaskListener listener, List<String> jsonFiles, File streamedDirectory, File embeddingsDirectory)
+            throws IOException, InterruptedException {
+        if (!streamedDirectory.mkdirs()) {
+            throw new IllegalStateException("Could not create directory for streamed reports: " + streamedDirectory);
+        }
+
+        List<File> files = new ArrayList<>();
+        for (String jsonFile : jsonFiles) {
+            files.add(new File(jsonFile));
+        }
+
+        AtomicInteger spilledEmbeddings = new AtomicInteger();
+        AtomicLong spilledBytes = new AtomicLong();
+        AtomicInteger duplicateEmbeddings = new AtomicInteger();
+        AtomicInteger droppedEmbeddings = new AtomicInteger();
+        AtomicLong savedBytes = new AtomicLong();
+        // budget is shared by all files of the build
+        AtomicLong budget = embeddingsBudget > 0 ? new AtomicLong(embeddingsBudget * 1024L * 1024L) : null;
+        long startTime = System.currentTimeMillis();
+        // files are independent, so they are streamed in parallel and collected in the original order
+        List<String> streamedFiles = ReportIngestionExecutor.process(files, ingestionParallelism, (index, jsonFile) -> {
+            JsonReportStreamer streamer = new JsonReportStreamer(embeddingsDirectory, JsonReportStreamer.DEFAULT_SPILL_THRESHOLD, maxStreamStringLength);
+            streamer.setExternalizeMedia(externalizeEmbeddings);
+            streamer.setBudget(budget);
+            streamer.setOnlyFailedScenarios(embeddingsOnlyForFailedScenarios);
+            File streamedFile = new File(streamedDirectory, index + ".json");
+            try {
+                streamer.stream(jsonFile, streamedFile);
+                spilledEmbeddings.addAndGet(streamer.getSpilledEmbeddings());
+                spilledBytes.addAndGet(streamer.getSpilledBytes());
+                duplicateEmbeddings.addAndGet(streamer.getDuplicateEmbeddings());
+                droppedEmbeddings.addAndGet(streamer.getDroppedEmbeddings());
+                savedBytes.addAndGet(streamer.getDuplicateBytes() + streamer.getDroppedBytes());
+                return streamedFile.getAbsolutePath();
+            } catch (IOException e) {
+                log(listener, String.format("Could not stream %s, file will be parsed as it is: %s", jsonFile, e.getMessage()));
+                return jsonFile.getAbsolutePath();
+            }
+        });
+        log(listener, String.format("Streamed %d json files in %d ms, stored %d embeddings (%d bytes) outside of parsed reports",
+                streamedFiles.size(), System.currentTimeMillis() - startTime, spilledEmbeddings.get(), spilledBytes.get()));
+        if (duplicateEmbeddings.get() > 0 || droppedEmbeddings.get() > 0) {
+            log(listener, String.format("Skipped %d duplicate embeddings and dropped %d embeddings, saving %d bytes",
+                    duplicateEmbeddings.get(), droppedEmbeddings.get(), savedBytes.get()));
+        }
+        return streamedFiles;
+    }
+
+    /**
+     * Reads outcomes of the scenarios and features from JSON files without parsing the whole reports.
+     *
+     * @param trendsDirectory directory of the job where results of scanned files are cached
+     */
+    private ReportScan scanJsonFiles(TaskListener listener, List<String> jsonFiles, File trendsDirectory) throws IOException, InterruptedException {
+        List<File> files = new ArrayList<>();
+        for (String jsonFile : jsonFiles) {
+            files.add(new File(jsonFile));
+        }
+
+        long startTime = System.currentTimeMillis();
+        CucumberJsonScanner scanner = new CucumberJsonScanner(maxStreamStringLength);
+        ScanCache cache = scanCache ? new ScanCache(trendsDirectory) : null;
+        List<ReportScan.FileScan> fileScans = ReportIngestionExecutor.process(files, ingestionParallelism, (index, jsonFile) -> {
+            try {
+                if (jsonFile.length() == 0 && !skipEmptyJSONFiles) {
+                    // report generator does not accept it either
+                    throw new IOException("File is empty");
+                }
+                if (cache != null) {
+                    return cache.scan(jsonFile, scanner);
+                }
+                ReportScan.FileScan fileScan = new ReportScan.FileScan();
+                scanner.scan(jsonFile, fileScan);
+                return fileScan;
+            } catch (IOException e) {
+                log(listener, String.format("Could not scan %s: %s", jsonFile, e.getMessage()));
+                return null;
+            }
+        });
+
+        ReportScan scan = new ReportScan();
+        for (ReportScan.FileScan fileScan : fileScans) {
+            if (fileScan != null) {
+                scan.add(fileScan);
+            } else {
+                scan.addUnreadable();
+            }
+        }
+        log(listener, String.format("Scanned %d json files in %d ms, found %d features and %d scenarios",
+                files.size(), System.currentTimeMillis() - startTime, scan.getFeatures().size(), scan.getScenarios().size()));
+        if (cache != null) {
+            log(listener, String.format("Reused scans of %d unchanged json files, scanned %d json files, removed %d least recently used scans",
+                    cache.getHits(), cache.getMisses(), cache.evict(ScanCache.MAX_ENTRIES)));
+        }
+        return scan;
     }
 
-    private List<String> copyFilesAndGetList(TaskListener listener, FilePath inputDirectory, File directoryJsonCache, String includePattern, String excludePattern) throws IOException, InterruptedException {
-        int count = inputDirectory.copyRecursiveTo(includePattern, new FilePath(directoryJsonCache));
-        log(listener, String.format("Copied %d files from workspace \"%s\" to reports directory \"%s\"",
-                count, inputDirectory.getRemote(), directoryJsonCache));
+    /**
+     * Counts the scanned JSON files when they decide the build result instead of the generated report. Report is not
+     * generated when any of its files is invalid, so the results are missing also when any file could not be scanned.
+     */
+    @CheckForNull
+    private ReportSummary getScannedSummary(ReportScan scan) {
+        if (scan.getUnreadableFiles() > 0) {
+            return null;
+        }
+        return scan.getSummary(getNotFailingStatuses(), mergeFeaturesById, mergeFeaturesWithRetest);
+    }
 
-        String[] copiedFiles = findFilesByPattern(directoryJsonCache, includePattern, excludePattern);
-        return getFullPath(copiedFiles, directoryJsonCache);
+    private void logRegressions(TaskListener listener, List<DurationRegression.Regression> regressions, int percentile) {
+        if (regressions.isEmpty()) {
+            log(listener, "No scenario nor feature took longer than allowed");
+            return;
+        }
+        log(listener, String.format("%d scenarios and features took %s%% longer than %d. percentile of their durations in previous builds:",
+                regressions.size(), new DecimalFormat("0.##").format(durationRegressionPercentage), percentile));
+        for (int i = 0; i < Math.min(regressions.size(), MAX_LOGGED_REGRESSIONS); i++) {
+            log(listener, regressions.get(i).toString());
+        }
+        if (regressions.size() > MAX_LOGGED_REGRESSIONS) {
+            log(listener, String.format("... and %d more", regressions.size() - MAX_LOGGED_REGRESSIONS));
+        }
+    }
+
+    private String getJsonIncludePattern() {
+        return StringUtils.isEmpty(fileIncludePattern) ? DEFAULT_FILE_INCLUDE_PATTERN_JSONS : fileIncludePattern;
     }
 
     private String getPomVersion(TaskListener listener) {
@@ -616,32 +1285,78 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
         }
     }
 
-    private String[] findFilesByPattern(File targetDirectory, String fileIncludePattern, String fileExcludePattern) {
-        DirectoryScanner scanner = new DirectoryScanner();
-        scanner.setBasedir(targetDirectory);
+    /**
+     * Finder of JSON files and of classification files read by the report.
+     */
+    private FileFinder createInputFinder() {
+        FileFinder finder = new FileFinder().add(JSON_FILES, getJsonIncludePattern(), fileExcludePattern, true);
+        if (StringUtils.isNotEmpty(classificationsFilePattern)) {
+            finder.add(CLASSIFICATION_FILES, classificationsFilePattern, null, false);
+        }
+        return finder;
+    }
 
-        if (StringUtils.isEmpty(fileIncludePattern)) {
-            scanner.setIncludes(new String[]{DEFAULT_FILE_INCLUDE_PATTERN_JSONS});
-        } else {
-            scanner.setIncludes(fileIncludePattern.split(",\\s*"));
+    private FileFinder addCustomFiles(FileFinder finder) {
+        if (StringUtils.isNotEmpty(customJsFiles)) {
+            finder.add(CUSTOM_JS_FILES, customJsFiles, null, true);
         }
-        if (StringUtils.isNotEmpty(fileExcludePattern)) {
-            scanner.setExcludes(fileExcludePattern.split(",\\s*"));
+        if (StringUtils.isNotEmpty(customCssFiles)) {
+            finder.add(CUSTOM_CSS_FILES, customCssFiles, null, true);
         }
-        scanner.setBasedir(targetDirectory);
-        scanner.scan();
-        return scanner.getIncludedFiles();
+        return finder;
     }
 
-    private List<String> getFullPath(String[] jsonFiles, File targetBuildDirectory) {
+    /**
+     * Returns full paths of the files which are located in the directory. Files which are links to other locations
+     * are skipped, so the report can not expose other files of the controller.
+     */
+    private List<String> getFilesInside(Collection<String> files, File directory, TaskListener listener) throws IOException {
+        Path realDirectory = directory.toPath().toRealPath();
         List<String> fullPathList = new ArrayList<>();
-        for (String file : jsonFiles) {
-            fullPathList.add(new File(targetBuildDirectory, file).getAbsolutePath());
+        for (String file : files) {
+            Path path = new File(directory, file).toPath();
+            try {
+                if (path.toRealPath().startsWith(realDirectory)) {
+                    fullPathList.add(path.toAbsolutePath().toString());
+                    continue;
+                }
+            } catch (IOException e) {
+                // broken link
+            }
+            log(listener, String.format("Skipping %s which points outside of %s", path, directory));
         }
         return fullPathList;
     }
 
-    private boolean hasReportFailed(Reportable result, TaskListener listener) {
+    /**
+     * Directory on the controller from which the input files can be read without copying them, {@code null} when
+     * they have to be copied. Files are copied for the reports parsed on the agent, and for the reports rendered in
+     * the background, as the workspace may be changed by the next build before the report is rendered.
+     */
+    @CheckForNull
+    private File getInPlaceDirectory(FilePath inputDirectory, TaskListener listener) throws IOException, InterruptedException {
+        if (!READ_IN_PLACE || parseOnAgent || deferredRendering || !inputDirectory.isDirectory()) {
+            return null;
+        }
+        if (!inputDirectory.isRemote()) {
+            return new File(inputDirectory.getRemote());
+        }
+        if (sharedWorkspace) {
+            // the same path may be mounted on the controller, which is verified by the file the controller has to see
+            FilePath probe = inputDirectory.createTempFile(".cucumber-shared", ".probe");
+            try {
+                if (new File(probe.getRemote()).isFile()) {
+                    return new File(inputDirectory.getRemote());
+                }
+                log(listener, String.format("Directory \"%s\" is not shared with the controller, files are copied", inputDirectory.getRemote()));
+            } finally {
+                probe.delete();
+            }
+        }
+        return null;
+    }
+
+    private boolean hasReportFailed(ReportSummary result, TaskListener listener) {
         // happens when the report could not be generated
         if (result == null) {
             log(listener, "Missing report result - report was not successfully completed");
@@ -740,6 +1455,10 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
     }
 
     private void setFailingStatuses(Configuration configuration) {
+        configuration.setNotFailingStatuses(getNotFailingStatuses());
+    }
+
+    private Set<Status> getNotFailingStatuses() {
         Set<Status> notFailingStatuses = new HashSet<>();
 
         if (failedAsNotFailingStatus) {
@@ -754,34 +1473,17 @@ public class CucumberReportPublisher extends Recorder implements SimpleBuildStep
         if (undefinedAsNotFailingStatus) {
             notFailingStatuses.add(Status.UNDEFINED);
         }
-
-        configuration.setNotFailingStatuses(notFailingStatuses);
+        return notFailingStatuses;
     }
 
-    private List<String> fetchPropertyFiles(File targetDirectory, TaskListener listener) {
-        List<String> propertyFiles = new ArrayList<>();
-        if (StringUtils.isNotEmpty(classificationsFilePattern)) {
-            DirectoryScanner scanner = new DirectoryScanner();
-            scanner.setIncludes(new String[]{classificationsFilePattern});
-            scanner.setBasedir(targetDirectory);
-            scanner.setCaseSensitive(false);
-            scanner.scan();
-            propertyFiles = getFullMetaDataPath(scanner.getIncludedFiles(), targetDirectory.toString());
-            for (String propertyFile : propertyFiles) {
-                log(listener, String.format("Found Properties File - %s ", propertyFile));
-            }
+    private List<String> fetchPropertyFiles(Collection<String> files, File targetDirectory, TaskListener listener) throws IOException {
+        List<String> propertyFiles = getFilesInside(files, targetDirectory, listener);
+        for (String propertyFile : propertyFiles) {
+            log(listener, String.format("Found Properties File - %s ", propertyFile));
         }
         return propertyFiles;
     }
 
-    private List<String> getFullMetaDataPath(String[] files, String propertiesDirectory) {
-        List<String> fullPathList = new ArrayList<>();
-        for (String file : files) {
-            fullPathList.add(propertiesDirectory + File.separator + file);
-        }
-        return fullPathList;
-    }
-
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
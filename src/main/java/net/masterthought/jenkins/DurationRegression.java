@@ -0,0 +1,115 @@
+package net.masterthought.jenkins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Compares durations of the scenarios and features of the build with the percentile of their durations in the
+ * previous builds, kept by {@link ScenarioHistory}.
+ *
+ * Items which were executed in only a few previous builds have no baseline yet, and very short items are not
+ * compared at all, as their durations vary too much.
+ */
+public class DurationRegression {
+
+    /**
+     * Number of the previous builds from which the baseline is computed.
+     */
+    static final int BASELINE_BUILDS = SystemProperties.getInteger(DurationRegression.class.getName() + ".baselineBuilds", 20);
+
+    /**
+     * Minimum number of runs in the previous builds for the baseline to be computed.
+     */
+    static final int MIN_BASELINE_RUNS = SystemProperties.getInteger(DurationRegression.class.getName() + ".minBaselineRuns", 5);
+
+    /**
+     * Items which took less milliseconds are never reported.
+     */
+    static final long MIN_DURATION = TimeUnit.MILLISECONDS.toNanos(
+            SystemProperties.getInteger(DurationRegression.class.getName() + ".minDuration", 1000));
+
+    /**
+     * Scenario or feature which took longer than its baseline allows.
+     */
+    public static class Regression {
+
+        private final String type;
+        private final String name;
+        private final long duration;
+        private final long baseline;
+
+        public Regression(String type, String name, long duration, long baseline) {
+            this.type = type;
+            this.name = name;
+            this.duration = duration;
+            this.baseline = baseline;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public long getBaseline() {
+            return baseline;
+        }
+
+        /**
+         * @return increase of the duration over the baseline in percents
+         */
+        public double getIncrease() {
+            return baseline > 0 ? (duration - baseline) * 100.0 / baseline : Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s \"%s\" took %.3f s, baseline is %.3f s (+%.0f%%)",
+                    type, name, duration / 1e9, baseline / 1e9, getIncrease());
+        }
+    }
+
+    private DurationRegression() {
+    }
+
+    /**
+     * Finds items which took longer than the percentile of their durations in the previous builds increased by the
+     * given percentage. History has to be searched before the outcomes of the build are appended to it.
+     *
+     * @param type       type of the items, presented in the log
+     * @param history    history of the items
+     * @param outcomes   outcomes of the items in the build
+     * @param percentile percentile of the durations in the previous builds used as the baseline
+     * @param percentage allowed increase of the duration over the baseline in percents
+     * @return regressions from the biggest one
+     */
+    public static List<Regression> find(String type, ScenarioHistory history, Collection<ScenarioHistory.Outcome> outcomes,
+                                        int percentile, double percentage) throws IOException {
+        Map<String, Long> baselines = history.getDurationPercentiles(BASELINE_BUILDS, percentile, MIN_BASELINE_RUNS);
+        List<Regression> regressions = new ArrayList<>();
+        for (ScenarioHistory.Outcome outcome : outcomes) {
+            Long baseline = baselines.get(outcome.getId());
+            if (baseline == null || outcome.getDuration() < MIN_DURATION) {
+                continue;
+            }
+            if (outcome.getDuration() > baseline * (1 + percentage / 100)) {
+                regressions.add(new Regression(type, outcome.getName(), outcome.getDuration(), baseline));
+            }
+        }
+        regressions.sort(Comparator.comparingDouble(Regression::getIncrease).reversed());
+        return regressions;
+    }
+}
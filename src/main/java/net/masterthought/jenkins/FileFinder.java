@@ -0,0 +1,376 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DirScanner;
+import hudson.util.FileVisitor;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.DirectoryScanner;
+
+/**
+ * Finds files matching Ant-style patterns (e.g. {@code **&#47;*.json}) of several categories in one walk of the
+ * directory tree. Patterns are compiled once, and directories under which no file of any category can match are not
+ * entered at all, e.g. {@code node_modules} when only {@code target/cucumber/**&#47;*.json} is included.
+ *
+ * Files are returned in the order in which they were visited, which is the same order in which Ant's
+ * {@code DirectoryScanner} found them. Ant's default excludes are applied as well, so files and directories of version
+ * control systems (e.g. {@code .git}) are skipped.
+ */
+public class FileFinder implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(FileFinder.class.getName());
+
+    private final Map<String, Category> categories = new LinkedHashMap<>();
+
+    /**
+     * Adds category of files to find.
+     *
+     * @param name          name of the category under which files are returned
+     * @param includes      comma separated patterns of the files to find
+     * @param excludes      comma separated patterns of the files to skip, may be empty
+     * @param caseSensitive whether patterns are case sensitive
+     * @return this finder
+     */
+    public FileFinder add(@NonNull String name, @NonNull String includes, @CheckForNull String excludes, boolean caseSensitive) {
+        List<AntPattern> excluded = split(excludes, caseSensitive);
+        for (String defaultExclude : DirectoryScanner.getDefaultExcludes()) {
+            excluded.add(new AntPattern(defaultExclude, caseSensitive));
+        }
+        categories.put(name, new Category(split(includes, caseSensitive), excluded));
+        return this;
+    }
+
+    /**
+     * @return {@code true} when no category was added
+     */
+    public boolean isEmpty() {
+        return categories.isEmpty();
+    }
+
+    /**
+     * Walks the directory and returns paths of the matching files, relative to the directory, by their categories.
+     * File matching more categories is returned for all of them. Missing directory has no files.
+     */
+    public Map<String, List<String>> find(@NonNull File directory) throws IOException {
+        Map<String, List<String>> found = new LinkedHashMap<>();
+        for (String name : categories.keySet()) {
+            found.put(name, new ArrayList<>());
+        }
+        walk(directory, (relativePath, category) -> found.get(category).add(relativePath));
+        return found;
+    }
+
+    private interface Consumer {
+        void accept(String relativePath, String category) throws IOException;
+    }
+
+    private void walk(File directory, Consumer consumer) throws IOException {
+        if (!directory.isDirectory()) {
+            return;
+        }
+        Path root = directory.toPath();
+        // links are followed, as they are by Ant, files outside of the directory are filtered by the caller
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(root)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String[] segments = segments(root.relativize(dir));
+                for (Category category : categories.values()) {
+                    if (category.mayMatchBelow(segments)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                }
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isDirectory()) {
+                    // link to the directory which creates a cycle
+                    return FileVisitResult.CONTINUE;
+                }
+                Path relative = root.relativize(file);
+                String[] segments = segments(relative);
+                String relativePath = null;
+                for (Map.Entry<String, Category> category : categories.entrySet()) {
+                    if (category.getValue().matches(segments)) {
+                        if (relativePath == null) {
+                            relativePath = relative.toString();
+                        }
+                        consumer.accept(relativePath, category.getKey());
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                if (!(e instanceof FileSystemLoopException)) {
+                    // unreadable files and directories are skipped, as they are by Ant
+                    LOGGER.log(Level.WARNING, "Could not read " + file + ", skipping it", e);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                if (e != null) {
+                    LOGGER.log(Level.WARNING, "Could not list all files in " + dir, e);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static String[] segments(Path relative) {
+        String[] segments = new String[relative.getNameCount()];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = relative.getName(i).toString();
+        }
+        return segments;
+    }
+
+    private static List<AntPattern> split(@CheckForNull String patterns, boolean caseSensitive) {
+        List<AntPattern> compiled = new ArrayList<>();
+        if (StringUtils.isNotBlank(patterns)) {
+            for (String pattern : patterns.split(",\\s*")) {
+                if (!pattern.trim().isEmpty()) {
+                    compiled.add(new AntPattern(pattern.trim(), caseSensitive));
+                }
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Copies files found by the finder, all categories together, e.g. by {@link hudson.FilePath#copyRecursiveTo}.
+     * Directories which can not contain any matching file are pruned on the node where the files are located.
+     */
+    public DirScanner toDirScanner() {
+        return new Scanner(this);
+    }
+
+    private static final class Scanner extends DirScanner {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileFinder finder;
+
+        Scanner(FileFinder finder) {
+            this.finder = finder;
+        }
+
+        @Override
+        public void scan(File dir, FileVisitor visitor) throws IOException {
+            String[] lastVisited = new String[1];
+            finder.walk(dir, (relativePath, category) -> {
+                // file matching more categories is reported for each of them one after another, but copied only once
+                if (!relativePath.equals(lastVisited[0])) {
+                    lastVisited[0] = relativePath;
+                    visitor.visit(new File(dir, relativePath), relativePath.replace(File.separatorChar, '/'));
+                }
+            });
+        }
+    }
+
+    private static final class Category implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<AntPattern> includes;
+        private final List<AntPattern> excludes;
+
+        Category(List<AntPattern> includes, List<AntPattern> excludes) {
+            this.includes = includes;
+            this.excludes = excludes;
+        }
+
+        boolean matches(String[] path) {
+            boolean included = false;
+            for (AntPattern include : includes) {
+                if (include.matches(path)) {
+                    included = true;
+                    break;
+                }
+            }
+            if (!included) {
+                return false;
+            }
+            for (AntPattern exclude : excludes) {
+                if (exclude.matches(path)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean mayMatchBelow(String[] directory) {
+            for (AntPattern exclude : excludes) {
+                if (exclude.matchesAllBelow(directory)) {
+                    return false;
+                }
+            }
+            for (AntPattern include : includes) {
+                if (include.mayMatchBelow(directory)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Pattern with {@code **} matching any number of directories, and {@code *} and {@code ?} matching characters
+     * within one name. Pattern ending with {@code /} matches everything under the directory, as in Ant.
+     */
+    static final class AntPattern implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final String ANY_DIRECTORIES = "**";
+
+        private final String[] segments;
+        // null for segments which are matched as they are
+        private final Pattern[] wildcards;
+        private final boolean caseSensitive;
+
+        AntPattern(String pattern, boolean caseSensitive) {
+            String normalized = pattern.replace('\\', '/');
+            if (normalized.endsWith("/")) {
+                normalized += ANY_DIRECTORIES;
+            }
+            List<String> parts = new ArrayList<>();
+            for (String part : normalized.split("/")) {
+                // consecutive ** are the same as one
+                if (!part.isEmpty() && !(ANY_DIRECTORIES.equals(part) && !parts.isEmpty() && ANY_DIRECTORIES.equals(parts.get(parts.size() - 1)))) {
+                    parts.add(part);
+                }
+            }
+            this.caseSensitive = caseSensitive;
+            this.segments = parts.toArray(new String[0]);
+            this.wildcards = new Pattern[segments.length];
+            for (int i = 0; i < segments.length; i++) {
+                if (!ANY_DIRECTORIES.equals(segments[i]) && (segments[i].indexOf('*') >= 0 || segments[i].indexOf('?') >= 0)) {
+                    wildcards[i] = toRegex(segments[i], caseSensitive);
+                }
+            }
+        }
+
+        private static Pattern toRegex(String segment, boolean caseSensitive) {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (char c : segment.toCharArray()) {
+                if (c == '*' || c == '?') {
+                    if (literal.length() > 0) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            return Pattern.compile(regex.toString(), caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+
+        private boolean matchesSegment(int index, String name) {
+            if (wildcards[index] != null) {
+                return wildcards[index].matcher(name).matches();
+            }
+            return caseSensitive ? segments[index].equals(name) : segments[index].toLowerCase(Locale.ENGLISH).equals(name.toLowerCase(Locale.ENGLISH));
+        }
+
+        /**
+         * @return {@code true} when the whole path matches the pattern
+         */
+        boolean matches(String[] path) {
+            return matches(0, segments.length, path, 0);
+        }
+
+        private boolean matches(int patternIndex, int patternLength, String[] path, int pathIndex) {
+            while (patternIndex < patternLength) {
+                if (ANY_DIRECTORIES.equals(segments[patternIndex])) {
+                    if (patternIndex == patternLength - 1) {
+                        return true;
+                    }
+                    for (int skipped = pathIndex; skipped < path.length; skipped++) {
+                        if (matches(patternIndex + 1, patternLength, path, skipped)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (pathIndex == path.length || !matchesSegment(patternIndex, path[pathIndex])) {
+                    return false;
+                }
+                patternIndex++;
+                pathIndex++;
+            }
+            return pathIndex == path.length;
+        }
+
+        /**
+         * @return {@code true} when any path under the directory may match the pattern
+         */
+        boolean mayMatchBelow(String[] directory) {
+            return mayMatchBelow(0, directory, 0);
+        }
+
+        private boolean mayMatchBelow(int patternIndex, String[] directory, int directoryIndex) {
+            while (directoryIndex < directory.length) {
+                if (patternIndex == segments.length) {
+                    return false;
+                }
+                if (ANY_DIRECTORIES.equals(segments[patternIndex])) {
+                    return true;
+                }
+                if (!matchesSegment(patternIndex, directory[directoryIndex])) {
+                    return false;
+                }
+                patternIndex++;
+                directoryIndex++;
+            }
+            // file itself is matched by the next segment
+            return patternIndex < segments.length;
+        }
+
+        /**
+         * @return {@code true} when every path under the directory matches the pattern, e.g. {@code **&#47;node_modules/**}
+         */
+        boolean matchesAllBelow(String[] directory) {
+            int last = segments.length - 1;
+            if (last < 0 || !ANY_DIRECTORIES.equals(segments[last])) {
+                return false;
+            }
+            // pattern without its trailing ** has to match the directory itself
+            return last == 0 || matches(0, last, directory, 0);
+        }
+    }
+}
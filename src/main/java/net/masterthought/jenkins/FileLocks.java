@@ -0,0 +1,28 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks of the files updated by concurrent builds. The same file always gets the same lock, files of other
+ * jobs and report titles get other locks, unless their paths fall into the same stripe.
+ */
+final class FileLocks {
+
+    private static final int LOCK_STRIPES = 256;
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    private FileLocks() {
+    }
+
+    static ReentrantLock get(File file) {
+        String path = file.toPath().toAbsolutePath().normalize().toString();
+        return LOCKS[Math.floorMod(path.hashCode(), LOCK_STRIPES)];
+    }
+}
@@ -0,0 +1,442 @@
+package net.masterthought.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import hudson.Util;
+
+/**
+ * Rewrites Cucumber JSON report token by token so the document is never materialized in memory.
+ *
+ * Embeddings (screenshots, videos, logs) whose decoded size reaches the threshold are decoded directly into
+ * the embeddings directory of the report and replaced by a reference to the stored file (images by their URL, other
+ * embeddings by a link), so the report parsed later contains only the metadata of features, scenarios and steps. Stored embeddings are named by their SHA-256 so identical embeddings
+ * are stored only once.
+ *
+ * Embeddings may be also dropped, either when they do not fit into the budget shared by all files of the build, or
+ * when they belong to a scenario which did not fail. Scenarios are then buffered without the data of their embeddings
+ * until their status is known, as the embeddings of hooks usually follow the failed step.
+ */
+public class JsonReportStreamer {
+
+    public static final String EMBEDDINGS_DIRECTORY = "embeddings";
+
+    public static final long DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+    private static final String EMBEDDINGS_FIELD = "embeddings";
+    private static final String ELEMENTS_FIELD = "elements";
+
+    private final ObjectMapper mapper;
+    private final File embeddingsDirectory;
+    private final long spillThreshold;
+
+    private boolean externalizeMedia;
+    private AtomicLong budget;
+    private boolean onlyFailedScenarios;
+
+    private int spilledEmbeddings;
+    private long spilledBytes;
+    private int duplicateEmbeddings;
+    private long duplicateBytes;
+    private int droppedEmbeddings;
+    private long droppedBytes;
+
+    // scenario being buffered, null when embeddings are written as soon as they are read
+    private Element element;
+
+    /**
+     * @param embeddingsDirectory   directory where embeddings are stored
+     * @param spillThreshold        decoded size in bytes from which embeddings are stored on disk
+     * @param maxStreamStringLength maximum length of other strings, or 0 for Jackson default
+     */
+    public JsonReportStreamer(File embeddingsDirectory, long spillThreshold, int maxStreamStringLength) {
+        JsonFactory factory = new JsonFactory();
+        if (maxStreamStringLength > 0) {
+            factory.setStreamReadConstraints(StreamReadConstraints.builder().maxStringLength(maxStreamStringLength).build());
+        }
+        this.mapper = new ObjectMapper(factory);
+        this.embeddingsDirectory = embeddingsDirectory;
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * Stores all embeddings which are not text (images, videos etc.) on disk, no matter how big they are.
+     */
+    public void setExternalizeMedia(boolean externalizeMedia) {
+        this.externalizeMedia = externalizeMedia;
+    }
+
+    /**
+     * @param budget remaining number of bytes of embeddings kept in the report, shared by all streamed files;
+     *               {@code null} when it is not limited
+     */
+    public void setBudget(AtomicLong budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Keeps embeddings only of scenarios (and backgrounds) which have a step or hook that neither passed nor was
+     * skipped.
+     */
+    public void setOnlyFailedScenarios(boolean onlyFailedScenarios) {
+        this.onlyFailedScenarios = onlyFailedScenarios;
+    }
+
+    public int getSpilledEmbeddings() {
+        return spilledEmbeddings;
+    }
+
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * @return number of embeddings which were not stored as they had been stored before
+     */
+    public int getDuplicateEmbeddings() {
+        return duplicateEmbeddings;
+    }
+
+    public long getDuplicateBytes() {
+        return duplicateBytes;
+    }
+
+    public int getDroppedEmbeddings() {
+        return droppedEmbeddings;
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * Copies the report from source to destination, storing the large embeddings on the way.
+     *
+     * @param source      JSON report to read
+     * @param destination file where the compact report is written
+     * @throws IOException when the report could not be read or written
+     */
+    public void stream(File source, File destination) throws IOException {
+        if (!embeddingsDirectory.mkdirs() && !embeddingsDirectory.isDirectory()) {
+            throw new IOException("Could not create directory for embeddings: " + embeddingsDirectory);
+        }
+
+        try (JsonParser parser = mapper.getFactory().createParser(source);
+             JsonGenerator generator = mapper.getFactory().createGenerator(destination, JsonEncoding.UTF8)) {
+            while (parser.nextToken() != null) {
+                copy(parser, generator, null);
+            }
+        }
+    }
+
+    private void copy(JsonParser parser, JsonGenerator generator, String fieldName) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_ARRAY) {
+            generator.writeStartArray();
+            while (nextToken(parser) != JsonToken.END_ARRAY) {
+                if (EMBEDDINGS_FIELD.equals(fieldName) && parser.currentToken() == JsonToken.START_OBJECT) {
+                    copyEmbedding(parser, generator);
+                } else if (ELEMENTS_FIELD.equals(fieldName) && onlyFailedScenarios && element == null
+                        && parser.currentToken() == JsonToken.START_OBJECT) {
+                    copyElement(parser, generator);
+                } else {
+                    copy(parser, generator, null);
+                }
+            }
+            generator.writeEndArray();
+        } else if (token == JsonToken.START_OBJECT) {
+            generator.writeStartObject();
+            while (nextToken(parser) == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                generator.writeFieldName(name);
+                nextToken(parser);
+                if (element != null && "result".equals(fieldName) && "status".equals(name)
+                        && parser.currentToken() == JsonToken.VALUE_STRING) {
+                    element.addStatus(parser.getText());
+                }
+                copy(parser, generator, name);
+            }
+            generator.writeEndObject();
+        } else {
+            generator.copyCurrentEvent(parser);
+        }
+    }
+
+    /**
+     * Copies scenario whose embeddings are written once it is known whether the scenario failed.
+     */
+    private void copyElement(JsonParser parser, JsonGenerator generator) throws IOException {
+        element = new Element();
+        try {
+            TokenBuffer buffer = new TokenBuffer(mapper, false);
+            copy(parser, buffer, null);
+            try (JsonParser replay = buffer.asParser()) {
+                while (replay.nextToken() != null) {
+                    if (replay.currentToken() == JsonToken.VALUE_EMBEDDED_OBJECT && replay.getEmbeddedObject() instanceof Embedding) {
+                        writeEmbedding(generator, (Embedding) replay.getEmbeddedObject(), element.failed);
+                    } else {
+                        generator.copyCurrentEvent(replay);
+                    }
+                }
+            }
+        } finally {
+            for (Embedding embedding : element.embeddings) {
+                embedding.delete();
+            }
+            element = null;
+        }
+    }
+
+    private void copyEmbedding(JsonParser parser, JsonGenerator generator) throws IOException {
+        Embedding embedding = readEmbedding(parser);
+        if (element != null) {
+            // written when the scenario is copied from the buffer
+            element.embeddings.add(embedding);
+            generator.writeEmbeddedObject(embedding);
+            return;
+        }
+        try {
+            writeEmbedding(generator, embedding, true);
+        } finally {
+            embedding.delete();
+        }
+    }
+
+    private Embedding readEmbedding(JsonParser parser) throws IOException {
+        Embedding embedding = new Embedding(mapper.createObjectNode());
+        try {
+            while (nextToken(parser) == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = nextToken(parser);
+                if ("data".equals(name) && value == JsonToken.VALUE_STRING && embedding.data == null) {
+                    // decodes base64 while reading so the (possibly huge) string is never kept in memory
+                    embedding.data = File.createTempFile("embedding", ".tmp", embeddingsDirectory);
+                    MessageDigest sha256 = createDigest();
+                    try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(embedding.data)), sha256)) {
+                        embedding.dataLength = parser.readBinaryValue(out);
+                    }
+                    embedding.digest = Util.toHexString(sha256.digest());
+                } else {
+                    embedding.fields.set(name, mapper.readTree(parser));
+                }
+            }
+            return embedding;
+        } catch (IOException | RuntimeException e) {
+            embedding.delete();
+            throw e;
+        }
+    }
+
+    private void writeEmbedding(JsonGenerator generator, Embedding embedding, boolean keep) throws IOException {
+        if (embedding.data == null) {
+            mapper.writeTree(generator, embedding.fields);
+            return;
+        }
+        String mimeType = embedding.fields.path("mime_type").asText("application/octet-stream");
+        if (!keep) {
+            drop(generator, embedding, mimeType, "the scenario did not fail");
+            return;
+        }
+
+        boolean media = !mimeType.toLowerCase(Locale.ENGLISH).startsWith("text/");
+        if (embedding.dataLength < spillThreshold && !(externalizeMedia && media)) {
+            if (!consumeBudget(embedding.dataLength)) {
+                drop(generator, embedding, mimeType, "the embeddings budget of the build was exceeded");
+                return;
+            }
+            generator.writeStartObject();
+            writeFields(generator, embedding.fields);
+            generator.writeFieldName("data");
+            try (InputStream in = new BufferedInputStream(new FileInputStream(embedding.data))) {
+                generator.writeBinary(in, (int) embedding.dataLength);
+            }
+            generator.writeEndObject();
+            return;
+        }
+
+        File target = new File(embeddingsDirectory, embedding.digest + "." + getExtension(mimeType));
+        if (target.exists()) {
+            duplicateEmbeddings++;
+            duplicateBytes += embedding.dataLength;
+        } else if (!consumeBudget(embedding.dataLength)) {
+            drop(generator, embedding, mimeType, "the embeddings budget of the build was exceeded");
+            return;
+        } else {
+            try {
+                Files.move(embedding.data.toPath(), target.toPath());
+            } catch (FileAlreadyExistsException e) {
+                // the same embedding was just stored by another file processed in parallel
+            }
+        }
+        spilledEmbeddings++;
+        spilledBytes += embedding.dataLength;
+
+        if (mimeType.toLowerCase(Locale.ENGLISH).startsWith("image/")) {
+            // pages of the report are next to the embeddings directory
+            writeReference(generator, embedding, "image/url", EMBEDDINGS_DIRECTORY + "/" + target.getName());
+        } else {
+            // HTML embeddings are shown from their own files in the embeddings directory, next to the stored file
+            writeReference(generator, embedding, "text/html", String.format("<a href=\"%s\">Embedding %s of %d bytes</a>",
+                    target.getName(), mimeType, embedding.dataLength));
+        }
+    }
+
+    private void drop(JsonGenerator generator, Embedding embedding, String mimeType, String reason) throws IOException {
+        droppedEmbeddings++;
+        droppedBytes += embedding.dataLength;
+        writeNote(generator, embedding, String.format("Embedding %s of %d bytes was dropped as %s",
+                mimeType, embedding.dataLength, reason));
+    }
+
+    private void writeNote(JsonGenerator generator, Embedding embedding, String note) throws IOException {
+        writeReference(generator, embedding, "text/plain", note);
+    }
+
+    /**
+     * Writes embedding with small data in place of the data which is not kept in the report.
+     */
+    private void writeReference(JsonGenerator generator, Embedding embedding, String mimeType, String data) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("mime_type", mimeType);
+        if (embedding.fields.has("name")) {
+            generator.writeFieldName("name");
+            mapper.writeTree(generator, embedding.fields.get("name"));
+        }
+        generator.writeFieldName("data");
+        generator.writeBinary(data.getBytes(StandardCharsets.UTF_8));
+        generator.writeEndObject();
+    }
+
+    private boolean consumeBudget(long length) {
+        if (budget == null) {
+            return true;
+        }
+        long remaining;
+        do {
+            remaining = budget.get();
+            if (remaining < length) {
+                return false;
+            }
+        } while (!budget.compareAndSet(remaining, remaining - length));
+        return true;
+    }
+
+    private void writeFields(JsonGenerator generator, ObjectNode fields) throws IOException {
+        Iterator<Map.Entry<String, JsonNode>> iterator = fields.fields();
+        while (iterator.hasNext()) {
+            Map.Entry<String, JsonNode> field = iterator.next();
+            generator.writeFieldName(field.getKey());
+            mapper.writeTree(generator, field.getValue());
+        }
+    }
+
+    /**
+     * Embedding read from the report, with its data decoded into a temporary file.
+     */
+    private static final class Embedding {
+
+        private final ObjectNode fields;
+        private File data;
+        private long dataLength;
+        private String digest;
+
+        Embedding(ObjectNode fields) {
+            this.fields = fields;
+        }
+
+        void delete() throws IOException {
+            if (data != null) {
+                Files.deleteIfExists(data.toPath());
+            }
+        }
+    }
+
+    /**
+     * Scenario being buffered until its status is known.
+     */
+    private static final class Element {
+
+        private final List<Embedding> embeddings = new ArrayList<>();
+        private boolean failed;
+
+        void addStatus(String status) {
+            if (!"passed".equals(status) && !"skipped".equals(status)) {
+                failed = true;
+            }
+        }
+    }
+
+    private static JsonToken nextToken(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            throw new JsonParseException(parser, "Unexpected end of JSON content");
+        }
+        return token;
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // cannot happen
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getExtension(String mimeType) {
+        switch (mimeType.toLowerCase(Locale.ENGLISH)) {
+            case "image/png":
+                return "png";
+            case "image/jpeg":
+            case "image/jpg":
+                return "jpg";
+            case "image/gif":
+                return "gif";
+            case "image/bmp":
+                return "bmp";
+            case "image/svg+xml":
+                return "svg";
+            case "video/mp4":
+                return "mp4";
+            case "text/plain":
+                return "txt";
+            case "text/html":
+                return "html";
+            case "application/json":
+                return "json";
+            case "application/xml":
+                return "xml";
+            default:
+                return "bin";
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Parses and reduces JSON reports where they are located (usually on the agent) so only the compact result
+ * is transferred to and parsed by the controller.
+ *
+ * Empty files are dropped when {@code skipEmptyJSONFiles} is set, features with the same ID are merged into one feature
+ * when {@code mergeFeaturesById} is set and all files are rewritten without formatting whitespace. Classification files,
+ * matched regardless of the case, are copied as they are.
+ */
+public class JsonReportsReducer extends MasterToSlaveFileCallable<JsonReportsReducer.Result> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String JSON_FILES = "json";
+    private static final String CLASSIFICATION_FILES = "classifications";
+
+    private final String targetDirectory;
+    private final String includePattern;
+    private final String excludePattern;
+    private final String classificationsPattern;
+    private final boolean skipEmptyJSONFiles;
+    private final boolean mergeFeaturesById;
+    private final int maxStreamStringLength;
+
+    public JsonReportsReducer(String targetDirectory, String includePattern, String excludePattern, String classificationsPattern,
+                              boolean skipEmptyJSONFiles, boolean mergeFeaturesById, int maxStreamStringLength) {
+        this.targetDirectory = targetDirectory;
+        this.includePattern = includePattern;
+        this.excludePattern = excludePattern;
+        this.classificationsPattern = classificationsPattern;
+        this.skipEmptyJSONFiles = skipEmptyJSONFiles;
+        this.mergeFeaturesById = mergeFeaturesById;
+        this.maxStreamStringLength = maxStreamStringLength;
+    }
+
+    @Override
+    public Result invoke(File inputDirectory, VirtualChannel channel) throws IOException {
+        File target = new File(targetDirectory);
+        Result result = new Result();
+
+        FileFinder finder = new FileFinder().add(JSON_FILES, includePattern, excludePattern, true);
+        if (StringUtils.isNotEmpty(classificationsPattern)) {
+            finder.add(CLASSIFICATION_FILES, classificationsPattern, null, false);
+        }
+        Map<String, List<String>> files = finder.find(inputDirectory);
+
+        for (String classificationFile : files.getOrDefault(CLASSIFICATION_FILES, Collections.emptyList())) {
+            File destination = new File(target, classificationFile);
+            Files.createDirectories(destination.getParentFile().toPath());
+            Files.copy(new File(inputDirectory, classificationFile).toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        ObjectMapper mapper = new ObjectMapper(createJsonFactory());
+        Map<String, ObjectNode> mergedFeatures = new LinkedHashMap<>();
+        File mergedFile = null;
+
+        for (String jsonFile : files.get(JSON_FILES)) {
+            File source = new File(inputDirectory, jsonFile);
+            result.readFiles++;
+            result.readBytes += source.length();
+            if (source.length() == 0 && skipEmptyJSONFiles) {
+                result.skippedFiles++;
+                continue;
+            }
+
+            File destination = new File(target, jsonFile);
+            Files.createDirectories(destination.getParentFile().toPath());
+            try {
+                if (mergeFeaturesById) {
+                    List<ObjectNode> features = readFeatures(mapper, source);
+                    // merged features are stored under the name of the first file so they still match include pattern
+                    if (mergedFile == null) {
+                        mergedFile = destination;
+                    }
+                    mergeFeatures(features, mergedFeatures);
+                    continue;
+                }
+                compact(mapper.getFactory(), source, destination);
+            } catch (IOException e) {
+                // copied as it is, so the report fails on it the same way as when it is parsed on the controller
+                result.invalidFiles.add(String.format("Could not reduce %s, file is copied as it is: %s", jsonFile, e.getMessage()));
+                Files.copy(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            result.writtenFiles++;
+            result.writtenBytes += destination.length();
+        }
+
+        if (mergedFile != null) {
+            ArrayNode features = mapper.createArrayNode();
+            features.addAll(mergedFeatures.values());
+            mapper.writeValue(mergedFile, features);
+            result.writtenFiles++;
+            result.writtenBytes += mergedFile.length();
+        }
+
+        return result;
+    }
+
+    private JsonFactory createJsonFactory() {
+        JsonFactory factory = new JsonFactory();
+        if (maxStreamStringLength > 0) {
+            factory.setStreamReadConstraints(StreamReadConstraints.builder().maxStringLength(maxStreamStringLength).build());
+        }
+        return factory;
+    }
+
+    private static void compact(JsonFactory factory, File source, File destination) throws IOException {
+        try (JsonParser parser = factory.createParser(source);
+             JsonGenerator generator = factory.createGenerator(destination, JsonEncoding.UTF8)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentStructure(parser);
+            }
+        }
+    }
+
+    /**
+     * Reads all features of the file, so the features merged so far are not changed when the file is not valid.
+     */
+    private static List<ObjectNode> readFeatures(ObjectMapper mapper, File source) throws IOException {
+        List<ObjectNode> features = new ArrayList<>();
+        try (JsonParser parser = mapper.getFactory().createParser(source)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("File " + source + " does not contain array of features");
+            }
+            // features are read one by one so the whole document is never kept as a single tree
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                features.add(mapper.readTree(parser));
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("File " + source + " does not contain array of features");
+            }
+        }
+        return features;
+    }
+
+    private static void mergeFeatures(List<ObjectNode> features, Map<String, ObjectNode> mergedFeatures) {
+        for (ObjectNode feature : features) {
+            JsonNode id = feature.get("id");
+            ObjectNode existing = id == null ? null : mergedFeatures.get(id.asText());
+            if (existing == null) {
+                mergedFeatures.put(id == null ? "\u0000" + mergedFeatures.size() : id.asText(), feature);
+            } else if (feature.get("elements") instanceof ArrayNode) {
+                JsonNode elements = existing.get("elements");
+                if (elements instanceof ArrayNode) {
+                    ((ArrayNode) elements).addAll((ArrayNode) feature.get("elements"));
+                } else {
+                    existing.set("elements", feature.get("elements"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Statistics of the reduction that are sent back to the controller.
+     */
+    public static class Result implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private int readFiles;
+        private int skippedFiles;
+        private int writtenFiles;
+        private long readBytes;
+        private long writtenBytes;
+        private final List<String> invalidFiles = new ArrayList<>();
+
+        /**
+         * @return messages about the files which could not be reduced and were copied as they are
+         */
+        public List<String> getInvalidFiles() {
+            return invalidFiles;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Reduced %d json files (%d bytes) to %d files (%d bytes), %d empty files skipped",
+                    readFiles, readBytes, writtenFiles, writtenBytes, skippedFiles);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package net.masterthought.jenkins;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Writes gzip compressed copies of the text files of the generated report, so they can be sent compressed to the
+ * browsers accepting it without compressing them on every request.
+ *
+ * Compressed copy is stored next to the original file with {@value #GZIP_EXTENSION} extension. Files which do not
+ * become smaller are not stored.
+ */
+public final class ReportCompressor {
+
+    public static final String GZIP_EXTENSION = ".gz";
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "html", "js", "css", "json", "svg", "txt", "xml", "map", "ttf", "eot"));
+
+    /**
+     * Smaller files fit into one packet anyway.
+     */
+    private static final long MIN_SIZE = 1024;
+
+    private ReportCompressor() {
+    }
+
+    /**
+     * Compresses text files of the directory and its descendants, except hidden directories.
+     *
+     * @param directory   report directory
+     * @param parallelism maximum number of files compressed at the same time, 0 for size of the pool
+     * @return statistics of the compression
+     */
+    public static Result compress(File directory, int parallelism) throws IOException, InterruptedException {
+        List<File> files = findCompressibleFiles(directory.toPath());
+
+        Result result = new Result();
+        ReportIngestionExecutor.process(files, parallelism, (index, file) -> {
+            long compressedSize = compress(file);
+            if (compressedSize >= 0) {
+                result.compressedFiles.incrementAndGet();
+                result.originalBytes.addAndGet(file.length());
+                result.compressedBytes.addAndGet(compressedSize);
+            }
+            return null;
+        });
+        return result;
+    }
+
+    private static List<File> findCompressibleFiles(Path directory) throws IOException {
+        List<File> files = new ArrayList<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                // skips cache with JSON files which is removed after report is generated
+                return !dir.equals(directory) && dir.getFileName().toString().startsWith(".")
+                        ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String extension = FilenameUtils.getExtension(file.getFileName().toString()).toLowerCase(Locale.ENGLISH);
+                if (attrs.isRegularFile() && attrs.size() >= MIN_SIZE && COMPRESSED_EXTENSIONS.contains(extension)) {
+                    files.add(file.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * @return size of the compressed file or -1 when the file was not compressed
+     */
+    private static long compress(File file) throws IOException {
+        File compressedFile = new File(file.getPath() + GZIP_EXTENSION);
+        try (OutputStream out = new BestCompressionGZIPOutputStream(new BufferedOutputStream(new FileOutputStream(compressedFile)))) {
+            Files.copy(file.toPath(), out);
+        }
+        long compressedSize = compressedFile.length();
+        if (compressedSize >= file.length()) {
+            Files.delete(compressedFile.toPath());
+            return -1;
+        }
+        return compressedSize;
+    }
+
+    private static final class BestCompressionGZIPOutputStream extends GZIPOutputStream {
+
+        BestCompressionGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, 64 * 1024);
+            // files are compressed once and served many times
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+
+    public static class Result {
+
+        private final AtomicInteger compressedFiles = new AtomicInteger();
+        private final AtomicLong originalBytes = new AtomicLong();
+        private final AtomicLong compressedBytes = new AtomicLong();
+
+        @Override
+        public String toString() {
+            return String.format("Compressed %d report files from %d to %d bytes",
+                    compressedFiles.get(), originalBytes.get(), compressedBytes.get());
+        }
+    }
+}
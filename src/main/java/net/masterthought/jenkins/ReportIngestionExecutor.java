@@ -0,0 +1,107 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+
+/**
+ * Processes JSON files concurrently on a pool that is shared by all builds, so builds publishing reports at the same
+ * time do not use more threads than the controller has processors.
+ *
+ * Results are always returned in the order of the given files, no matter in which order the tasks completed.
+ */
+public final class ReportIngestionExecutor {
+
+    /**
+     * Size of the shared pool, defaults to number of available processors.
+     */
+    static final int POOL_SIZE = SystemProperties.getInteger(ReportIngestionExecutor.class.getName() + ".poolSize",
+            Runtime.getRuntime().availableProcessors());
+
+    private static ExecutorService executor;
+
+    private ReportIngestionExecutor() {
+    }
+
+    /**
+     * Task processing one file.
+     *
+     * @param <T> type of the result
+     */
+    public interface FileTask<T> {
+        T process(int index, File file) throws IOException;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Math.max(1, POOL_SIZE),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "CucumberReportIngestion"));
+        }
+        return executor;
+    }
+
+    /**
+     * Runs the task for every file.
+     *
+     * @param files       files to process
+     * @param parallelism maximum number of files processed at the same time for this call, 0 for size of the pool
+     * @param task        task executed for every file
+     * @return results of the task in the same order as the files
+     * @throws IOException when processing of any file failed
+     * @throws InterruptedException when the build was interrupted
+     */
+    public static <T> List<T> process(List<File> files, int parallelism, FileTask<T> task) throws IOException, InterruptedException {
+        int maxRunning = parallelism > 0 ? parallelism : Math.max(1, POOL_SIZE);
+        @SuppressWarnings("unchecked")
+        T[] results = (T[]) new Object[files.size()];
+        if (files.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(getExecutor());
+        List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            int submitted = 0;
+            int completed = 0;
+            while (completed < files.size()) {
+                while (submitted < files.size() && submitted - completed < maxRunning) {
+                    final int index = submitted++;
+                    futures.add(completionService.submit(() -> {
+                        results[index] = task.process(index, files.get(index));
+                        return index;
+                    }));
+                }
+                completionService.take().get();
+                completed++;
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<Integer> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        // results array is filled by other threads but all of them completed before take() returned
+        return new ArrayList<>(Arrays.asList(results));
+    }
+}
@@ -0,0 +1,98 @@
+package net.masterthought.jenkins;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Stores the generated report as one zip file next to the report directory, so the build keeps one file instead of
+ * thousands of small ones. Entries are found by the central directory of the zip file and served directly from it.
+ */
+public final class ReportPack {
+
+    public static final String EXTENSION = ".zip";
+
+    private ReportPack() {
+    }
+
+    /**
+     * Pack file for the report directory, located next to the directory so it is never served.
+     */
+    public static File getPackFile(@NonNull File reportDirectory) {
+        return new File(reportDirectory.getParentFile(), reportDirectory.getName() + EXTENSION);
+    }
+
+    /**
+     * Moves all files of the directory and its descendants, except hidden directories, into the pack file and removes
+     * the directory.
+     *
+     * @param directory report directory
+     * @return statistics of the packing
+     * @throws IOException when the pack file could not be written
+     */
+    public static Result pack(@NonNull File directory) throws IOException {
+        File packFile = getPackFile(directory);
+        if (packFile.exists()) {
+            throw new IllegalStateException("Report pack " + packFile + " already exists. Another report with the same title already generated?");
+        }
+
+        Result result = new Result();
+        File tempFile = new File(packFile.getPath() + ".tmp");
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            Path root = directory.toPath();
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    // skips cache with JSON files which is removed after report is generated
+                    return !dir.equals(root) && dir.getFileName().toString().startsWith(".")
+                            ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (attrs.isRegularFile()) {
+                        // entry names use '/' separator as they are looked up by the requested path
+                        ZipEntry entry = new ZipEntry(root.relativize(file).toString().replace(File.separatorChar, '/'));
+                        entry.setTime(attrs.lastModifiedTime().toMillis());
+                        out.putNextEntry(entry);
+                        Files.copy(file, out);
+                        out.closeEntry();
+                        result.packedFiles++;
+                        result.packedBytes += attrs.size();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        Files.move(tempFile.toPath(), packFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        result.packSize = packFile.length();
+
+        FileUtils.deleteDirectory(directory);
+        return result;
+    }
+
+    public static class Result {
+
+        private int packedFiles;
+        private long packedBytes;
+        private long packSize;
+
+        @Override
+        public String toString() {
+            return String.format("Packed %d report files (%d bytes) into one file of %d bytes",
+                    packedFiles, packedBytes, packSize);
+        }
+    }
+}
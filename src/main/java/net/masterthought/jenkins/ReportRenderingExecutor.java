@@ -0,0 +1,143 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Renders reports on the controller after their builds released the executors. Pool is shared by all jobs and has
+ * only a few threads, reports published at the same time wait in the queue. Queue is bounded, so rendered reports do
+ * not pile up on the controller when they are published faster than they are rendered, and reports which do not fit
+ * into it are rendered by their builds.
+ */
+public final class ReportRenderingExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(ReportRenderingExecutor.class.getName());
+
+    /**
+     * Number of reports rendered at the same time.
+     */
+    static final int POOL_SIZE = SystemProperties.getInteger(ReportRenderingExecutor.class.getName() + ".poolSize", 2);
+
+    /**
+     * Number of reports waiting to be rendered.
+     */
+    static final int QUEUE_SIZE = SystemProperties.getInteger(ReportRenderingExecutor.class.getName() + ".queueSize", 20);
+
+    private static ExecutorService executor;
+
+    /**
+     * Directories of the reports which are queued or being rendered.
+     */
+    private static final Set<File> RENDERED_DIRECTORIES = ConcurrentHashMap.newKeySet();
+
+    private ReportRenderingExecutor() {
+    }
+
+    /**
+     * Task rendering one report.
+     */
+    public interface RenderingTask {
+
+        /**
+         * @return summary of the report, {@code null} when the report could not be generated
+         */
+        @CheckForNull
+        ReportSummary render() throws IOException, InterruptedException;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int poolSize = Math.max(1, POOL_SIZE);
+            executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, QUEUE_SIZE)),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "CucumberReportRendering"));
+        }
+        return executor;
+    }
+
+    /**
+     * Queues rendering of the report. Action of the report is updated and the build is saved once the rendering
+     * finished, no matter whether it succeeded.
+     *
+     * @param run    build of the report
+     * @param action action presenting the report, marked as being rendered
+     * @param task   task rendering the report
+     * @return {@code false} when the queue is full and nothing was queued, so the report has to be rendered by the
+     * caller, see {@link #render}
+     */
+    public static boolean submit(Run<?, ?> run, SafeArchiveServingRunAction action, RenderingTask task) {
+        File reportDirectory = action.getRootDir();
+        RENDERED_DIRECTORIES.add(reportDirectory);
+        try {
+            getExecutor().execute(() -> {
+                try {
+                    render(run, action, task);
+                } finally {
+                    RENDERED_DIRECTORIES.remove(reportDirectory);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            RENDERED_DIRECTORIES.remove(reportDirectory);
+            return false;
+        } catch (RuntimeException | Error e) {
+            // task is never run, so it does not remove its input files either
+            RENDERED_DIRECTORIES.remove(reportDirectory);
+            FileUtils.deleteQuietly(action.getCacheDirectory());
+            action.renderingFailed(e.toString());
+            throw e;
+        }
+    }
+
+    /**
+     * Renders the report in the calling thread. Action of the report is updated and the build is saved once the
+     * rendering finished, no matter whether it succeeded.
+     *
+     * @param run    build of the report
+     * @param action action presenting the report, marked as being rendered
+     * @param task   task rendering the report
+     */
+    public static void render(Run<?, ?> run, SafeArchiveServingRunAction action, RenderingTask task) {
+        long startTime = System.currentTimeMillis();
+        try {
+            ReportSummary summary = task.render();
+            if (summary == null) {
+                action.renderingFailed("Report could not be generated");
+            } else {
+                action.renderingFinished(summary);
+                LOGGER.log(Level.FINE, "Rendered report of {0} in {1} ms", new Object[]{run, System.currentTimeMillis() - startTime});
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not render report of " + run, e);
+            action.renderingFailed(e.toString());
+        }
+        try {
+            run.save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save " + run, e);
+        }
+    }
+
+    /**
+     * @return {@code true} when the report in given directory is queued or being rendered
+     */
+    public static boolean isRendering(File reportDirectory) {
+        return RENDERED_DIRECTORIES.contains(reportDirectory);
+    }
+}
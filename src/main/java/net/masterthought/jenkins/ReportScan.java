@@ -0,0 +1,311 @@
+package net.masterthought.jenkins;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import net.masterthought.cucumber.json.support.Status;
+
+/**
+ * Data read from the JSON files by {@link CucumberJsonScanner} in one pass, which the report generator does not
+ * provide, or which is needed without generating the report.
+ */
+public class ReportScan {
+
+    private final List<Feature> allFeatures = new ArrayList<>();
+    private final Map<String, ScenarioHistory.Outcome> scenarios = new LinkedHashMap<>();
+    private final Map<String, ScenarioHistory.Outcome> features = new LinkedHashMap<>();
+    private final StepHotspots steps = new StepHotspots();
+    private int unreadableFiles;
+
+    /**
+     * Feature as it was found in one file, with its backgrounds and scenarios in their order.
+     */
+    private static final class Feature {
+
+        private final String id;
+        private final List<CucumberJsonScanner.Scenario> elements;
+
+        Feature(String id, List<CucumberJsonScanner.Scenario> elements) {
+            this.id = id;
+            this.elements = elements;
+        }
+    }
+
+    /**
+     * Collects data of one file. Files are scanned concurrently, each one by its own visitor.
+     */
+    public static class FileScan implements CucumberJsonScanner.Visitor {
+
+        private final List<Feature> allFeatures = new ArrayList<>();
+        private List<CucumberJsonScanner.Scenario> featureElements = new ArrayList<>();
+        private final List<ScenarioHistory.Outcome> scenarios = new ArrayList<>();
+        private final List<ScenarioHistory.Outcome> features = new ArrayList<>();
+        private final StepHotspots steps = new StepHotspots();
+
+        @Override
+        public void step(String location, String name, Status status, long duration, boolean hook) {
+            steps.add(location, duration);
+        }
+
+        @Override
+        public void background(String featureId, String featureName, CucumberJsonScanner.Scenario background) {
+            featureElements.add(background);
+        }
+
+        @Override
+        public void scenario(String featureId, String featureName, CucumberJsonScanner.Scenario scenario) {
+            featureElements.add(scenario);
+            scenarios.add(new ScenarioHistory.Outcome(scenario.getId(), scenario.getName(), scenario.getStatus(), scenario.getDuration()));
+        }
+
+        @Override
+        public void feature(String id, String name, Status status, long duration) {
+            allFeatures.add(new Feature(id, featureElements));
+            featureElements = new ArrayList<>();
+            features.add(new ScenarioHistory.Outcome(id, name, status, duration));
+        }
+
+        /**
+         * Writes the data of the file, so the file does not have to be scanned again when it did not change.
+         */
+        void write(DataOutputStream output) throws IOException {
+            output.writeInt(features.size());
+            for (int i = 0; i < features.size(); i++) {
+                ScenarioHistory.Outcome feature = features.get(i);
+                ScenarioHistory.writeString(output, feature.getId());
+                ScenarioHistory.writeString(output, feature.getName());
+                output.writeByte(CucumberJsonScanner.severity(feature.getStatus()));
+                output.writeLong(feature.getDuration());
+                List<CucumberJsonScanner.Scenario> elements = allFeatures.get(i).elements;
+                output.writeInt(elements.size());
+                for (CucumberJsonScanner.Scenario element : elements) {
+                    element.write(output);
+                }
+            }
+            steps.write(output);
+        }
+
+        /**
+         * Reads the data written by {@link #write}.
+         */
+        static FileScan read(DataInputStream input) throws IOException {
+            FileScan fileScan = new FileScan();
+            int featureCount = input.readInt();
+            for (int i = 0; i < featureCount; i++) {
+                String id = ScenarioHistory.readString(input);
+                String name = ScenarioHistory.readString(input);
+                Status status = CucumberJsonScanner.readStatus(input);
+                long duration = input.readLong();
+                int elementCount = input.readInt();
+                for (int j = 0; j < elementCount; j++) {
+                    CucumberJsonScanner.Scenario element = CucumberJsonScanner.Scenario.read(input);
+                    if (element.isBackground()) {
+                        fileScan.background(id, name, element);
+                    } else {
+                        fileScan.scenario(id, name, element);
+                    }
+                }
+                fileScan.feature(id, name, status, duration);
+            }
+            fileScan.steps.addAll(StepHotspots.read(input));
+            return fileScan;
+        }
+    }
+
+    /**
+     * Adds data of the file. Files have to be added in their order, as the later result of the same scenario replaces
+     * the earlier one, e.g. when the scenario was rerun.
+     */
+    public void add(FileScan fileScan) {
+        allFeatures.addAll(fileScan.allFeatures);
+        for (ScenarioHistory.Outcome scenario : fileScan.scenarios) {
+            scenarios.put(scenario.getId(), scenario);
+        }
+        for (ScenarioHistory.Outcome feature : fileScan.features) {
+            // feature split into more files (e.g. by parallel runner) took time of all its parts
+            ScenarioHistory.Outcome previous = features.get(feature.getId());
+            features.put(feature.getId(), previous == null ? feature : new ScenarioHistory.Outcome(
+                    feature.getId(), feature.getName(), feature.getStatus(), previous.getDuration() + feature.getDuration()));
+        }
+        steps.addAll(fileScan.steps);
+    }
+
+    /**
+     * Records the file which could not be scanned, so it is known that its results are missing.
+     */
+    public void addUnreadable() {
+        unreadableFiles++;
+    }
+
+    /**
+     * @return number of files which could not be scanned
+     */
+    public int getUnreadableFiles() {
+        return unreadableFiles;
+    }
+
+    /**
+     * @return outcomes of the scenarios, the last one when the same scenario was reported more than once
+     */
+    public Collection<ScenarioHistory.Outcome> getScenarios() {
+        return scenarios.values();
+    }
+
+    /**
+     * @return outcomes of the features, with durations of all parts of the same feature summed up
+     */
+    public Collection<ScenarioHistory.Outcome> getFeatures() {
+        return features.values();
+    }
+
+    /**
+     * @return durations of all steps and hooks by their step definition
+     */
+    public StepHotspots getSteps() {
+        return steps;
+    }
+
+    /**
+     * Counts features, scenarios and steps in the same way as the report generator does, so the quality gate can be
+     * evaluated without generating the report. Background is counted as an element of its own, its steps are counted
+     * and it fails its feature, but not the scenario which follows it.
+     *
+     * @param notFailingStatuses      statuses of the steps which do not fail the scenario
+     * @param mergeFeaturesById       whether features with the same id are counted as one feature
+     * @param mergeFeaturesWithRetest whether the later result of the scenario replaces the earlier one
+     * @return summary of the report, {@code null} when the report generator does not generate the report from the
+     * files, e.g. when they have no features or the retested scenario does not have its start time
+     */
+    @CheckForNull
+    public ReportSummary getSummary(Set<Status> notFailingStatuses, boolean mergeFeaturesById, boolean mergeFeaturesWithRetest) {
+        if (allFeatures.isEmpty()) {
+            return null;
+        }
+        Collection<List<CucumberJsonScanner.Scenario>> mergedFeatures = merge(mergeFeaturesById, mergeFeaturesWithRetest);
+        if (mergedFeatures == null) {
+            return null;
+        }
+
+        int passedFeatures = 0;
+        int scenarioCount = 0;
+        int passedScenarios = 0;
+        int[] stepCounts = new int[CucumberJsonScanner.STATUSES.length];
+        long duration = 0;
+        for (List<CucumberJsonScanner.Scenario> elements : mergedFeatures) {
+            boolean featurePassed = true;
+            for (CucumberJsonScanner.Scenario element : elements) {
+                boolean passed = element.isPassed(notFailingStatuses);
+                featurePassed &= passed;
+                if (element.isScenario()) {
+                    scenarioCount++;
+                    if (passed) {
+                        passedScenarios++;
+                    }
+                }
+                for (Status status : CucumberJsonScanner.STATUSES) {
+                    stepCounts[CucumberJsonScanner.severity(status)] += element.getSteps(status);
+                }
+                duration += element.getStepDuration();
+            }
+            if (featurePassed) {
+                passedFeatures++;
+            }
+        }
+
+        int stepCount = 0;
+        for (int count : stepCounts) {
+            stepCount += count;
+        }
+        return new ReportSummary(
+                mergedFeatures.size(), passedFeatures, mergedFeatures.size() - passedFeatures,
+                scenarioCount, passedScenarios, scenarioCount - passedScenarios,
+                stepCount, stepCounts[CucumberJsonScanner.severity(Status.PASSED)], stepCounts[CucumberJsonScanner.severity(Status.FAILED)],
+                stepCounts[CucumberJsonScanner.severity(Status.SKIPPED)], stepCounts[CucumberJsonScanner.severity(Status.PENDING)],
+                stepCounts[CucumberJsonScanner.severity(Status.UNDEFINED)],
+                duration);
+    }
+
+    /**
+     * Merges features in the same way as the report generator does. Features with the same id are merged into the
+     * first one of them. With retest, the scenario replaces the same scenario of the merged feature when it started
+     * later, together with the background which precedes it, otherwise elements of the feature are appended.
+     *
+     * @return elements of the merged features, {@code null} when the retested scenario does not have its start time
+     */
+    @CheckForNull
+    private Collection<List<CucumberJsonScanner.Scenario>> merge(boolean mergeFeaturesById, boolean mergeFeaturesWithRetest) {
+        Map<Object, List<CucumberJsonScanner.Scenario>> mergedFeatures = new LinkedHashMap<>();
+        for (Feature feature : allFeatures) {
+            Object featureKey = mergeFeaturesById || mergeFeaturesWithRetest ? feature.id : new Object();
+            List<CucumberJsonScanner.Scenario> elements = mergedFeatures.get(featureKey);
+            if (elements == null) {
+                mergedFeatures.put(featureKey, new ArrayList<>(feature.elements));
+            } else if (!mergeFeaturesWithRetest) {
+                elements.addAll(feature.elements);
+            } else if (!retest(elements, feature.elements)) {
+                return null;
+            }
+        }
+        return mergedFeatures.values();
+    }
+
+    private static boolean retest(List<CucumberJsonScanner.Scenario> elements, List<CucumberJsonScanner.Scenario> candidates) {
+        for (int i = 0; i < candidates.size(); i++) {
+            CucumberJsonScanner.Scenario candidate = candidates.get(i);
+            if (!candidate.isScenario()) {
+                continue;
+            }
+            if (candidate.getStartTime() == null) {
+                return false;
+            }
+            CucumberJsonScanner.Scenario background = i > 0 && candidates.get(i - 1).isBackground() ? candidates.get(i - 1) : null;
+            int index = indexOfScenario(elements, candidate.getId());
+            if (index < 0) {
+                if (background != null) {
+                    elements.add(background);
+                }
+                elements.add(candidate);
+                continue;
+            }
+            CucumberJsonScanner.Scenario target = elements.get(index);
+            if (target.getStartTime() == null) {
+                return false;
+            }
+            if (compareStartTimes(candidate.getStartTime(), target.getStartTime()) >= 0) {
+                elements.set(index, candidate);
+                if (background != null && index > 0 && elements.get(index - 1).isBackground()) {
+                    elements.set(index - 1, background);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int indexOfScenario(List<CucumberJsonScanner.Scenario> elements, String id) {
+        for (int i = 0; i < elements.size(); i++) {
+            if (elements.get(i).isScenario() && id.equals(elements.get(i).getId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int compareStartTimes(String first, String second) {
+        try {
+            return Instant.parse(first).compareTo(Instant.parse(second));
+        } catch (DateTimeParseException e) {
+            // written by the same tool in the same format
+            return first.compareTo(second);
+        }
+    }
+}
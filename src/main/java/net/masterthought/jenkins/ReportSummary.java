@@ -0,0 +1,154 @@
+package net.masterthought.jenkins;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.masterthought.cucumber.Reportable;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Numbers of features, scenarios and steps of one report by their status, together with its duration.
+ *
+ * Summary is exposed by the remote API of the build, so the numbers are available without reading the report.
+ */
+@ExportedBean(defaultVisibility = 2)
+public class ReportSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int features;
+    private final int passedFeatures;
+    private final int failedFeatures;
+
+    private final int scenarios;
+    private final int passedScenarios;
+    private final int failedScenarios;
+
+    private final int steps;
+    private final int passedSteps;
+    private final int failedSteps;
+    private final int skippedSteps;
+    private final int pendingSteps;
+    private final int undefinedSteps;
+
+    private final long duration;
+
+    public ReportSummary(int features, int passedFeatures, int failedFeatures,
+                         int scenarios, int passedScenarios, int failedScenarios,
+                         int steps, int passedSteps, int failedSteps, int skippedSteps, int pendingSteps, int undefinedSteps,
+                         long duration) {
+        this.features = features;
+        this.passedFeatures = passedFeatures;
+        this.failedFeatures = failedFeatures;
+        this.scenarios = scenarios;
+        this.passedScenarios = passedScenarios;
+        this.failedScenarios = failedScenarios;
+        this.steps = steps;
+        this.passedSteps = passedSteps;
+        this.failedSteps = failedSteps;
+        this.skippedSteps = skippedSteps;
+        this.pendingSteps = pendingSteps;
+        this.undefinedSteps = undefinedSteps;
+        this.duration = duration;
+    }
+
+    public static ReportSummary of(Reportable reportable) {
+        return new ReportSummary(
+                reportable.getFeatures(), reportable.getPassedFeatures(), reportable.getFailedFeatures(),
+                reportable.getScenarios(), reportable.getPassedScenarios(), reportable.getFailedScenarios(),
+                reportable.getSteps(), reportable.getPassedSteps(), reportable.getFailedSteps(),
+                reportable.getSkippedSteps(), reportable.getPendingSteps(), reportable.getUndefinedSteps(),
+                reportable.getDuration());
+    }
+
+    /**
+     * @return numbers by their names, as returned to the pipeline
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("features", features);
+        map.put("passedFeatures", passedFeatures);
+        map.put("failedFeatures", failedFeatures);
+        map.put("scenarios", scenarios);
+        map.put("passedScenarios", passedScenarios);
+        map.put("failedScenarios", failedScenarios);
+        map.put("steps", steps);
+        map.put("passedSteps", passedSteps);
+        map.put("failedSteps", failedSteps);
+        map.put("skippedSteps", skippedSteps);
+        map.put("pendingSteps", pendingSteps);
+        map.put("undefinedSteps", undefinedSteps);
+        map.put("duration", duration);
+        return map;
+    }
+
+    @Exported
+    public int getFeatures() {
+        return features;
+    }
+
+    @Exported
+    public int getPassedFeatures() {
+        return passedFeatures;
+    }
+
+    @Exported
+    public int getFailedFeatures() {
+        return failedFeatures;
+    }
+
+    @Exported
+    public int getScenarios() {
+        return scenarios;
+    }
+
+    @Exported
+    public int getPassedScenarios() {
+        return passedScenarios;
+    }
+
+    @Exported
+    public int getFailedScenarios() {
+        return failedScenarios;
+    }
+
+    @Exported
+    public int getSteps() {
+        return steps;
+    }
+
+    @Exported
+    public int getPassedSteps() {
+        return passedSteps;
+    }
+
+    @Exported
+    public int getFailedSteps() {
+        return failedSteps;
+    }
+
+    @Exported
+    public int getSkippedSteps() {
+        return skippedSteps;
+    }
+
+    @Exported
+    public int getPendingSteps() {
+        return pendingSteps;
+    }
+
+    @Exported
+    public int getUndefinedSteps() {
+        return undefinedSteps;
+    }
+
+    /**
+     * @return duration in nanoseconds
+     */
+    @Exported
+    public long getDuration() {
+        return duration;
+    }
+}
@@ -4,7 +4,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.MessageDigest;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -13,17 +13,20 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 
-import edu.umd.cs.findbugs.annotations.NonNull;
-import edu.umd.cs.findbugs.annotations.Nullable;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.FilePath;
-import hudson.Util;
 import hudson.model.Action;
 import hudson.model.DirectoryBrowserSupport;
 import hudson.util.HttpResponses;
+import jenkins.util.SystemProperties;
 import net.jcip.annotations.GuardedBy;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.io.IOUtils;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
@@ -44,18 +47,34 @@ import static java.util.Collections.unmodifiableSet;
  *
  * This class implements a safe alternative to serving files from DirectoryBrowserSupport:
  *
- * This action, when first attached, scans the specified directory and records all files' checksums.
+ * This action, when first attached, scans the specified directory and records all files' checksums. Checksums are
+ * stored in the manifest file next to the directory and loaded when the first file is served.
  *
  * When later asked to serve files, it compares the actual and expected checksums, and only serves matching files.
  *
+ * When the report was packed into one file (see {@link ReportPack}), files are served from the entries of the pack.
+ *
  */
 public class SafeArchiveServingAction implements Action {
 
     private static final Logger LOGGER = Logger.getLogger(SafeArchiveServingAction.class.getName());
 
+    /**
+     * Files and packed files up to this size are read into memory once to be verified and sent, larger ones are read
+     * again to be sent.
+     */
+    private static final long MAX_BUFFERED_SIZE = 1024 * 1024;
+
+    /**
+     * Checksums of the reports created by previous versions of the plugin, new reports keep them in manifest file.
+     */
     @GuardedBy("fileChecksums")
     private final Map<String,String> fileChecksums = new HashMap<>();
 
+    private transient volatile Map<String,String> manifestChecksums;
+
+    private transient volatile ZipFile pack;
+
     private final File rootDir;
 
     private final String urlName;
@@ -104,7 +123,7 @@ public class SafeArchiveServingAction implements Action {
     }
 
     /** Copy constructor, primarily for {@link #writeReplace} */
-    private SafeArchiveServingAction(SafeArchiveServingAction other) {
+    protected SafeArchiveServingAction(SafeArchiveServingAction other) {
         synchronized (other.fileChecksums) {
             this.rootDir = other.rootDir;
             this.urlName = other.urlName;
@@ -132,54 +151,67 @@ public class SafeArchiveServingAction implements Action {
         return new SafeArchiveServingAction(this);
     }
 
-    private void addFile(String relativePath, String checksum) {
-        synchronized (this.fileChecksums) {
-            this.fileChecksums.put(relativePath, checksum);
-        }
-    }
-
+    @CheckForNull
     private String getChecksum(String file) {
-        if (file == null || !fileChecksums.containsKey(file)) {
-            throw new IllegalArgumentException(file + " has no checksum recorded");
-        }
         synchronized (this.fileChecksums) {
-            return fileChecksums.get(file);
+            if (!fileChecksums.isEmpty()) {
+                return fileChecksums.get(file);
+            }
         }
+        return getManifestChecksums().get(file);
     }
 
-    private String calculateChecksum(@NonNull File file) throws NoSuchAlgorithmException, IOException {
-        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
-        try (FileInputStream fis = new FileInputStream(file)) {
-            byte[] bytes = new byte[1024];
-            while (-1 != (fis.read(bytes))) {
-                sha1.update(bytes);
+    private Map<String,String> getManifestChecksums() {
+        Map<String,String> checksums = manifestChecksums;
+        if (checksums == null) {
+            synchronized (this) {
+                checksums = manifestChecksums;
+                if (checksums == null) {
+                    try {
+                        checksums = ChecksumManifest.read(getChecksumsFile());
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Could not read checksums from " + getChecksumsFile(), e);
+                        checksums = new HashMap<>();
+                    }
+                    manifestChecksums = checksums;
+                }
             }
         }
-        return Util.toHexString(sha1.digest());
+        return checksums;
     }
 
-    private void processDirectory(@NonNull File directory, @Nullable String path) throws NoSuchAlgorithmException, IOException {
-        if (LOGGER.isLoggable(Level.FINER)) {
-            LOGGER.log(Level.FINER, "Scanning " + getRootDir());
-        }
-        File[] files = directory.listFiles();
-        if (files == null) {
-            throw new IllegalArgumentException(directory + " listing returned null");
-        }
-        for (File file : files) {
+    /**
+     * Manifest file with checksums, located next to the root directory so it is never served.
+     */
+    protected File getChecksumsFile() {
+        return new File(getRootDir().getParentFile(), getRootDir().getName() + ".checksums");
+    }
 
-            String relativePath = file.getName();
-            if (path != null) {
-                relativePath = path + "/" + relativePath;
-            }
+    /**
+     * Pack file with the report, used instead of the root directory when it exists.
+     */
+    protected File getPackFile() {
+        return ReportPack.getPackFile(getRootDir());
+    }
 
-            if (file.isDirectory()) {
-                processDirectory(file, relativePath);
-            }
-            if (file.isFile() && !isSafeFileType(file.getName())) {
-                addFile(relativePath, calculateChecksum(file));
+    /**
+     * Opens the pack file once and keeps it open, so the central directory is not read on every request.
+     *
+     * @return pack or {@code null} when the report is not packed
+     */
+    @CheckForNull
+    private ZipFile getPack() throws IOException {
+        ZipFile zipFile = pack;
+        if (zipFile == null) {
+            synchronized (this) {
+                zipFile = pack;
+                if (zipFile == null && getPackFile().isFile()) {
+                    zipFile = new ZipFile(getPackFile());
+                    pack = zipFile;
+                }
             }
         }
+        return zipFile;
     }
 
     /**
@@ -191,7 +223,16 @@ public class SafeArchiveServingAction implements Action {
      */
     public void processDirectory() throws NoSuchAlgorithmException, IOException {
         LOGGER.log(Level.FINE, "Scanning " + getRootDir());
-        processDirectory(getRootDir(), null);
+        Map<String,String> checksums;
+        if (getPackFile().isFile()) {
+            try (ZipFile zipFile = new ZipFile(getPackFile())) {
+                checksums = ChecksumManifest.calculate(zipFile, this::isSafeFileType);
+            }
+        } else {
+            checksums = ChecksumManifest.calculate(getRootDir(), this::isSafeFileType);
+        }
+        ChecksumManifest.write(getChecksumsFile(), checksums);
+        manifestChecksums = checksums;
     }
 
     private boolean isSafeFileType(String filename) {
@@ -240,9 +281,38 @@ public class SafeArchiveServingAction implements Action {
             fileName = fileName.substring(1);
         }
 
+        ZipFile zipFile = getPack();
+        if (zipFile != null) {
+            return servePackedFile(req, rsp, zipFile, fileName);
+        }
+
         File file = new File(getRootDir(), fileName);
 
-        if (!new File(getRootDir(), fileName).exists()) {
+        // compressed copy of the file is sent when the browser accepts it
+        String contentEncoding = null;
+        if (!isSafeFileType(fileName) && isTrustedDirectory(file.getParentFile())
+                && getChecksum(fileName + ReportCompressor.GZIP_EXTENSION) != null) {
+            rsp.setHeader("Vary", "Accept-Encoding");
+            if (acceptsGzip(req)) {
+                fileName = fileName + ReportCompressor.GZIP_EXTENSION;
+                contentEncoding = "gzip";
+            }
+        }
+        File servedFile = new File(getRootDir(), fileName);
+
+        if (!isSafeFileType(fileName)) {
+            // recorded files never change, so the copy the client already has can be used without reading the file
+            String recordedChecksum = getChecksum(fileName);
+            if (recordedChecksum != null && isNotModified(req, recordedChecksum)) {
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "File not modified: " + fileName);
+                }
+                setCacheHeaders(rsp, file, recordedChecksum);
+                return HttpResponses.status(HttpServletResponse.SC_NOT_MODIFIED);
+            }
+        }
+
+        if (!servedFile.exists()) {
             if (LOGGER.isLoggable(Level.FINEST)) {
                 LOGGER.log(Level.FINEST, "File does not exist: " + fileName);
             }
@@ -261,21 +331,20 @@ public class SafeArchiveServingAction implements Action {
 
         // if we're here, we know it's not a safe file type based on name
 
-        synchronized (this.fileChecksums) {
-            if (!fileChecksums.containsKey(fileName)) {
-                // file had no checksum recorded -- dangerous
-                if (LOGGER.isLoggable(Level.FINEST)) {
-                    LOGGER.log(Level.FINEST, "File exists but no checksum recorded: " + fileName);
-                }
-
-                throw HttpResponses.notFound();
+        String expectedChecksum = getChecksum(fileName);
+        if (expectedChecksum == null) {
+            // file had no checksum recorded -- dangerous
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST, "File exists but no checksum recorded: " + fileName);
             }
+
+            throw HttpResponses.notFound();
         }
 
         // checksum recorded
 
         // do not serve files outside the archive directory
-        if (!file.getAbsolutePath().startsWith(this.getRootDir().getAbsolutePath())) {
+        if (!servedFile.getAbsolutePath().startsWith(this.getRootDir().getAbsolutePath())) {
             // TODO symlinks and similar insanity?
             if (LOGGER.isLoggable(Level.FINEST)) {
                 LOGGER.log(Level.FINEST, "File is outside archive directory: " + fileName);
@@ -284,16 +353,12 @@ public class SafeArchiveServingAction implements Action {
             throw HttpResponses.notFound();
         }
 
-        // calculate actual file checksum
-        String actualChecksum;
-        try {
-            actualChecksum = calculateChecksum(file);
-        } catch (NoSuchAlgorithmException nse) {
-            // cannot happen
-            throw new IllegalStateException(nse);
-        }
+        // smaller files are read into the heap only once, the same content is verified and sent; larger files are
+        // verified and then read again while being sent
+        ChecksumCache.Content content = ChecksumCache.read(servedFile, MAX_BUFFERED_SIZE);
 
-        String expectedChecksum = getChecksum(fileName);
+        // calculate actual file checksum, unless the file was already verified and did not change since then
+        String actualChecksum = content == null ? ChecksumCache.getChecksum(servedFile) : content.getChecksum();
 
         if (!expectedChecksum.equals(actualChecksum)) {
             if (LOGGER.isLoggable(Level.FINEST)) {
@@ -304,18 +369,153 @@ public class SafeArchiveServingAction implements Action {
             throw HttpResponses.forbidden();
         }
 
-        return serveFile(file);
+        setCacheHeaders(rsp, file, expectedChecksum);
+        ByteBuffer bytes = content == null ? null : content.getBytes();
+        if (contentEncoding != null) {
+            return new UnsafeDirectoryBrowserSupport(file, servedFile, bytes, contentEncoding);
+        }
+        return serveFile(file, bytes);
 
     }
 
+    private HttpResponse servePackedFile(StaplerRequest req, StaplerResponse rsp, ZipFile zipFile, String fileName) throws IOException {
+        // file is used only to find out whether it is located in trusted directory
+        File file = new File(getRootDir(), fileName);
+        boolean trusted = isTrustedDirectory(file.getParentFile());
+
+        String contentEncoding = null;
+        if (!isSafeFileType(fileName) && trusted && getChecksum(fileName + ReportCompressor.GZIP_EXTENSION) != null) {
+            rsp.setHeader("Vary", "Accept-Encoding");
+            if (acceptsGzip(req)) {
+                fileName = fileName + ReportCompressor.GZIP_EXTENSION;
+                contentEncoding = "gzip";
+            }
+        }
+
+        String expectedChecksum = null;
+        if (!isSafeFileType(fileName)) {
+            expectedChecksum = getChecksum(fileName);
+            if (expectedChecksum == null) {
+                // entry had no checksum recorded, or does not exist at all
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "No checksum recorded for packed file: " + fileName);
+                }
+                throw HttpResponses.notFound();
+            }
+            if (isNotModified(req, expectedChecksum)) {
+                setCacheHeaders(rsp, file, expectedChecksum);
+                return HttpResponses.status(HttpServletResponse.SC_NOT_MODIFIED);
+            }
+        }
+
+        ZipEntry entry = zipFile.getEntry(fileName);
+        if (entry == null || entry.isDirectory()) {
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST, "Packed file does not exist: " + fileName);
+            }
+            throw HttpResponses.notFound();
+        }
+
+        // smaller entries are inflated only once, to calculate the checksum and to send the file
+        ByteBuffer content = null;
+        if (entry.getSize() >= 0 && entry.getSize() <= MAX_BUFFERED_SIZE) {
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                content = ByteBuffer.wrap(IOUtils.toByteArray(in, entry.getSize()));
+            }
+        }
+
+        if (expectedChecksum != null) {
+            String actualChecksum;
+            if (content != null) {
+                actualChecksum = ChecksumManifest.calculateChecksum(content);
+            } else {
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    actualChecksum = ChecksumManifest.calculateChecksum(in);
+                }
+            }
+            if (!expectedChecksum.equals(actualChecksum)) {
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Checksum mismatch: recorded: " +
+                            expectedChecksum + ", actual: " + actualChecksum + " for packed file: " + fileName);
+                }
+                throw HttpResponses.forbidden();
+            }
+            setCacheHeaders(rsp, file, expectedChecksum);
+        }
+
+        return new PackedFileResponse(file.getName(), zipFile, entry, content, contentEncoding, trusted);
+    }
+
+    /**
+     * Checks whether the Accept-Encoding header of the request allows gzip encoding.
+     */
+    private static boolean acceptsGzip(StaplerRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            if ("gzip".equalsIgnoreCase(parameters[0].trim())) {
+                for (int i = 1; i < parameters.length; i++) {
+                    String parameter = parameters[i].replace(" ", "");
+                    if (parameter.matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String toETag(String checksum) {
+        return '"' + checksum + '"';
+    }
+
+    /**
+     * Checks whether the If-None-Match header of the request contains the entity tag of the file.
+     */
+    private static boolean isNotModified(StaplerRequest req, String checksum) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String etag = toETag(checksum);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            // weak comparison is used for If-None-Match
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Static resources are cached for long time as they are the same for the whole life of the build, the pages are
+     * revalidated on every view as they link to other builds.
+     */
+    private void setCacheHeaders(StaplerResponse rsp, File file, String checksum) {
+        rsp.setHeader("ETag", toETag(checksum));
+        if (CollectionUtils.isNotEmpty(safeDirectories) && safeDirectories.contains(file.getParentFile())
+                && !file.getParentFile().equals(getRootDir())) {
+            rsp.setHeader("Cache-Control", "private, max-age=31536000, immutable");
+        } else {
+            rsp.setHeader("Cache-Control", "private, no-cache");
+        }
+    }
+
     private HttpResponse serveFile(File file) throws IOException, ServletException {
-        if (CollectionUtils.isEmpty(safeDirectories)) {
-            // this is to keep compatibility with older reports for which the collection might not be initiated
-            return new UnsafeDirectoryBrowserSupport(file);
-        } else if (safeDirectories.contains(file.getParentFile())) {
-            // Reports in safe directories can be trusted and must be served
-            // without Content-Security-Policy to display reports properly
-            return new UnsafeDirectoryBrowserSupport(file);
+        return serveFile(file, null);
+    }
+
+    private HttpResponse serveFile(File file, @CheckForNull ByteBuffer content) throws IOException, ServletException {
+        if (isTrustedDirectory(file.getParentFile())) {
+            return new UnsafeDirectoryBrowserSupport(file, file, content, null);
         } else {
             // Other can (such as embeddings) can not be trusted,and must
             // be served with Content-Security-Policy
@@ -323,22 +523,140 @@ public class SafeArchiveServingAction implements Action {
         }
     }
 
+    private boolean isTrustedDirectory(File directory) {
+        // empty collection is to keep compatibility with older reports for which the collection might not be initiated,
+        // reports in safe directories can be trusted and must be served
+        // without Content-Security-Policy to display reports properly
+        return CollectionUtils.isEmpty(safeDirectories) || safeDirectories.contains(directory);
+    }
+
     private static final class UnsafeDirectoryBrowserSupport implements HttpResponse{
 
         private final File file;
 
-        UnsafeDirectoryBrowserSupport(File file) {
+        private final File servedFile;
+
+        @CheckForNull
+        private final ByteBuffer content;
+
+        @CheckForNull
+        private final String contentEncoding;
+
+        /**
+         * @param file            requested file, its name determines content type
+         * @param servedFile      file which is sent, either the requested file or its compressed copy
+         * @param content         already read content of the served file
+         * @param contentEncoding encoding of the served file
+         */
+        UnsafeDirectoryBrowserSupport(File file, File servedFile, @CheckForNull ByteBuffer content, @CheckForNull String contentEncoding) {
             this.file = file;
+            this.servedFile = servedFile;
+            this.content = content;
+            this.contentEncoding = contentEncoding;
         }
 
         @Override
         public void generateResponse(StaplerRequest req, StaplerResponse rsp, Object node) throws IOException, ServletException {
             // serve the file without Content-Security-Policy
-            long lastModified = file.lastModified();
-            long length = file.length();
-            try (InputStream in = new FileInputStream(file)) {
+            long lastModified = servedFile.lastModified();
+            if (contentEncoding != null) {
+                rsp.setHeader("Content-Encoding", contentEncoding);
+            }
+            if (content != null) {
+                // serve exactly the content that was verified
+                ByteBuffer buffer = content.duplicate();
+                try (InputStream in = new ByteBufferInputStream(buffer)) {
+                    rsp.serveFile(req, in, lastModified, -1, buffer.remaining(), file.getName());
+                }
+                return;
+            }
+            long length = servedFile.length();
+            try (InputStream in = new FileInputStream(servedFile)) {
                 rsp.serveFile(req, in, lastModified, -1, length, file.getName());
             }
         }
     }
+
+    private static final class PackedFileResponse implements HttpResponse {
+
+        private final String name;
+        private final ZipFile zipFile;
+        private final ZipEntry entry;
+
+        @CheckForNull
+        private final ByteBuffer content;
+
+        @CheckForNull
+        private final String contentEncoding;
+
+        private final boolean trusted;
+
+        PackedFileResponse(String name, ZipFile zipFile, ZipEntry entry, @CheckForNull ByteBuffer content,
+                           @CheckForNull String contentEncoding, boolean trusted) {
+            this.name = name;
+            this.zipFile = zipFile;
+            this.entry = entry;
+            this.content = content;
+            this.contentEncoding = contentEncoding;
+            this.trusted = trusted;
+        }
+
+        @Override
+        public void generateResponse(StaplerRequest req, StaplerResponse rsp, Object node) throws IOException, ServletException {
+            if (!trusted) {
+                // the same policy as DirectoryBrowserSupport uses for files which can not be trusted
+                String csp = SystemProperties.getString(DirectoryBrowserSupport.CSP_PROPERTY_NAME, DirectoryBrowserSupport.DEFAULT_CSP_VALUE);
+                if (!csp.trim().isEmpty()) {
+                    for (String header : new String[]{"Content-Security-Policy", "X-WebKit-CSP", "X-Content-Security-Policy"}) {
+                        rsp.setHeader(header, csp);
+                    }
+                }
+            }
+            if (contentEncoding != null) {
+                rsp.setHeader("Content-Encoding", contentEncoding);
+            }
+            try (InputStream in = content != null ? new ByteBufferInputStream(content.duplicate()) : zipFile.getInputStream(entry)) {
+                rsp.serveFile(req, in, entry.getTime(), -1, entry.getSize(), name);
+            }
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
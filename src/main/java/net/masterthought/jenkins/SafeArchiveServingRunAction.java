@@ -2,39 +2,215 @@ package net.masterthought.jenkins;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
 import hudson.model.Action;
 import hudson.model.Run;
 import jenkins.model.RunAction2;
 import jenkins.tasks.SimpleBuildStep;
+import org.apache.commons.io.FileUtils;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
 
 /**
  * Convenience implementation of {@link SafeArchiveServingAction} for runs that starts a scan on being attached to the
  * build.
+ *
+ * Summary of the report is exposed by the remote API of the build. Report rendered in the background is presented as
+ * being rendered until its pages are ready.
  */
+@ExportedBean
 public class SafeArchiveServingRunAction extends SafeArchiveServingAction implements RunAction2, SimpleBuildStep.LastBuildAction {
 
     private static final Logger LOGGER = Logger.getLogger(SafeArchiveServingRunAction.class.getName());
 
-    private Run<?, ?> run;
+    private static final String RENDERING_LOG_EXTENSION = ".rendering.log";
+
+    /**
+     * Directory of the report where its input files are kept while it is rendered.
+     */
+    static final String CACHE_DIRECTORY = ".cache";
+
+    private transient Run<?, ?> run;
     private String directorySuffix;
 
+    @CheckForNull
+    private ReportSummary summary;
+
+    private volatile boolean rendering;
+    @CheckForNull
+    private volatile String renderingError;
+
 	public SafeArchiveServingRunAction(@NonNull Run<?, ?> r, File rootDir, String urlName, String indexFile, String iconName, String title, String directorySuffix, String... safeExtensions) {
         super(rootDir, urlName, indexFile, iconName, title, safeExtensions);
         this.directorySuffix = directorySuffix;
 		this.run = r;
     }
 
+    /** Copy constructor, primarily for {@link #writeReplace} */
+    private SafeArchiveServingRunAction(SafeArchiveServingRunAction other) {
+        super(other);
+        this.run = other.run;
+        this.directorySuffix = other.directorySuffix;
+        this.summary = other.summary;
+        this.rendering = other.rendering;
+        this.renderingError = other.renderingError;
+    }
+
+    /**
+     * Keeps the type of the action when the build is saved, so the summary is stored as well.
+     */
+    @Override
+    protected synchronized Object writeReplace() {
+        return new SafeArchiveServingRunAction(this);
+    }
+
+    /**
+     * @return summary of the report, {@code null} for the reports created by previous versions of the plugin
+     */
+    @CheckForNull
+    @Exported
+    public ReportSummary getSummary() {
+        return summary;
+    }
+
+    @Exported
+    @Override
+    public String getDisplayName() {
+        return rendering ? String.format(Messages.SidePanel_DisplayNameRendering(), super.getDisplayName()) : super.getDisplayName();
+    }
+
+    /**
+     * @return {@code true} while pages of the report are rendered in the background
+     */
+    @Exported
+    public boolean isRendering() {
+        return rendering;
+    }
+
+    /**
+     * @return reason why the report rendered in the background is not available, {@code null} when it is
+     */
+    @CheckForNull
+    @Exported
+    public String getRenderingError() {
+        return renderingError;
+    }
+
+    @Exported
+    @Override
+    public String getUrlName() {
+        return super.getUrlName();
+    }
+
+    public void setSummary(@CheckForNull ReportSummary summary) {
+        this.summary = summary;
+    }
+
+    /**
+     * Marks the report as being rendered, so its files are not scanned when the action is attached to the build.
+     */
+    public void setRendering(boolean rendering) {
+        this.rendering = rendering;
+    }
+
+    /**
+     * Records checksums of the rendered report and makes it available.
+     *
+     * @param summary summary of the rendered report
+     */
+    public void renderingFinished(@NonNull ReportSummary summary) {
+        this.summary = summary;
+        try {
+            processDirectory();
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            LOGGER.log(Level.WARNING, "Exception scanning " + getRootDir(), ex);
+        }
+        rendering = false;
+    }
+
+    /**
+     * @param error reason why the report could not be rendered
+     */
+    public void renderingFailed(@NonNull String error) {
+        renderingError = error;
+        rendering = false;
+    }
+
+    /**
+     * @return directory of the input files of the report, removed once the report is rendered
+     */
+    public File getCacheDirectory() {
+        return new File(getRootDir(), CACHE_DIRECTORY);
+    }
+
+    /**
+     * @return log of the report rendered in the background, stored next to the directory of the report
+     */
+    public File getRenderingLogFile() {
+        return new File(getRootDir().getParentFile(), getRootDir().getName() + RENDERING_LOG_EXTENSION);
+    }
+
+    /**
+     * Sends the log of the report rendered in the background, linked from the page presented instead of the report.
+     */
+    public void doRenderingLog(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        File logFile = getRenderingLogFile();
+        if (!logFile.isFile()) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        rsp.setContentType("text/plain;charset=UTF-8");
+        Files.copy(logFile.toPath(), rsp.getOutputStream());
+    }
+
+    @Override
+    public HttpResponse doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+        if (rendering) {
+            return renderingPage(req, HttpServletResponse.SC_OK, "<meta http-equiv=\"refresh\" content=\"5\">",
+                    Messages.Rendering_InProgress());
+        }
+        if (renderingError != null) {
+            return renderingPage(req, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "",
+                    String.format(Messages.Rendering_Failed(), renderingError));
+        }
+        return super.doDynamic(req, rsp);
+    }
+
+    private HttpResponse renderingPage(StaplerRequest req, int status, String head, String message) {
+        String logUrl = req.getContextPath() + '/' + run.getUrl() + getUrlName() + "/renderingLog";
+        String html = "<html><head>" + head + "<title>" + Util.escape(super.getDisplayName()) + "</title></head><body><p>"
+                + Util.escape(message) + "</p><p><a href=\"" + Util.escape(logUrl) + "\">"
+                + Util.escape(Messages.Rendering_Log()) + "</a></p></body></html>";
+        return (request, response, node) -> {
+            response.setStatus(status);
+            HttpResponses.literalHtml(html).generateResponse(request, response, node);
+        };
+    }
+
     @Override
     public void onAttached(Run<?, ?> r) {
+        this.run = r;
+        if (rendering) {
+            // checksums are recorded once the report is rendered
+            return;
+        }
         try {
-        	this.run = r;
             processDirectory();
         } catch (IOException | NoSuchAlgorithmException ex) {
             LOGGER.log(Level.WARNING, "Exception scanning " + r.getRootDir(), ex);
@@ -44,6 +220,11 @@ public class SafeArchiveServingRunAction extends SafeArchiveServingAction implem
     @Override
     public void onLoad(Run<?, ?> r) {
     	this.run = r;
+        if (rendering && !ReportRenderingExecutor.isRendering(getRootDir())) {
+            // Jenkins was restarted before the report was rendered, so nothing else removes its input files
+            FileUtils.deleteQuietly(getCacheDirectory());
+            renderingFailed(Messages.Rendering_Interrupted());
+        }
     }
 
     @Override
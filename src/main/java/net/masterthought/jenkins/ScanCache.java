@@ -0,0 +1,165 @@
+package net.masterthought.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import jenkins.util.SystemProperties;
+
+/**
+ * Results of scanning JSON files, kept for the job and looked up by SHA-256 of the content of the file. Files published
+ * again without any change, e.g. by reruns or by axes of the matrix which did not change, are not scanned again.
+ *
+ * Every result is stored in its own file, so builds of the job running at the same time share the cache without
+ * locking. Results used by the build are touched, and the least recently used ones are removed when there are more
+ * than {@link #MAX_ENTRIES} of them.
+ */
+public class ScanCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ScanCache.class.getName());
+
+    public static final String DIRECTORY = "cucumber-scans";
+
+    /**
+     * Maximum number of results kept for the job.
+     */
+    static final int MAX_ENTRIES = SystemProperties.getInteger(ScanCache.class.getName() + ".maxEntries", 2000);
+
+    private static final String EXTENSION = ".scan";
+    // changed whenever the format of the results changes, so results of previous versions are not read
+    private static final int MAGIC = 0x43535332;
+
+    private final File directory;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @param trendsDirectory directory of the job where trends of the report are stored
+     */
+    public ScanCache(@NonNull File trendsDirectory) {
+        this.directory = new File(trendsDirectory, DIRECTORY);
+    }
+
+    /**
+     * Returns the result of scanning the file, scanned only when the file with the same content was not scanned
+     * before.
+     *
+     * @throws IOException when the file could not be scanned
+     */
+    public ReportScan.FileScan scan(@NonNull File jsonFile, @NonNull CucumberJsonScanner scanner) throws IOException {
+        File entry = new File(directory, checksum(jsonFile) + EXTENSION);
+        ReportScan.FileScan cached = read(entry);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        ReportScan.FileScan fileScan = new ReportScan.FileScan();
+        scanner.scan(jsonFile, fileScan);
+        write(entry, fileScan);
+        return fileScan;
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Removes the least recently used results so at most given number of them is kept.
+     *
+     * @return number of removed results
+     */
+    public int evict(int maxEntries) {
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (entries == null || entries.length <= maxEntries) {
+            return 0;
+        }
+        long[] lastModified = new long[entries.length];
+        Integer[] order = new Integer[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            // read only once, the time of the entry may change while sorting when other build uses it
+            lastModified[i] = entries[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastModified[i]));
+        int removed = 0;
+        for (int i = 0; i < entries.length - maxEntries; i++) {
+            if (entries[order[i]].delete()) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private ReportScan.FileScan read(File entry) {
+        if (!entry.isFile()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry.toPath())))) {
+            if (input.readInt() != MAGIC) {
+                return null;
+            }
+            ReportScan.FileScan fileScan = ReportScan.FileScan.read(input);
+            // marks the entry as recently used
+            entry.setLastModified(System.currentTimeMillis());
+            return fileScan;
+        } catch (IOException | RuntimeException e) {
+            // removed by other build or damaged, file is scanned again
+            LOGGER.log(Level.FINE, "Could not read scan " + entry, e);
+            return null;
+        }
+    }
+
+    private void write(File entry, ReportScan.FileScan fileScan) throws IOException {
+        Util.createDirectories(directory.toPath());
+        File tempFile = new File(directory, UUID.randomUUID() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+                output.writeInt(MAGIC);
+                fileScan.write(output);
+            }
+            // other build may store the same result at the same time, both have the same content
+            Files.move(tempFile.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private static String checksum(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return Util.toHexString(digest.digest());
+    }
+}
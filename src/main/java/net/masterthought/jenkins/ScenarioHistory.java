@@ -0,0 +1,739 @@
+package net.masterthought.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+import net.masterthought.cucumber.json.support.Status;
+
+/**
+ * History of the scenarios of the job, used to find flaky and slow scenarios without reading the reports.
+ *
+ * Every build stores outcomes of its scenarios next to its report (see {@link #writeBuildFile}). The job keeps
+ * dictionary of scenario ids, to which scenarios are appended when they are seen for the first time, and append-only
+ * log with one record per build. Record holds only index of the scenario in the dictionary, its status and duration,
+ * so the history of many builds is read with one pass over the last records of the log. The log is compacted once it
+ * has twice as many builds as {@link #MAX_BUILDS}.
+ *
+ * Updates of the history are serialized by the lock of the log (see {@link FileLocks}).
+ */
+public class ScenarioHistory {
+
+    public static final String DICTIONARY_FILE = "cucumber-scenarios.dict";
+    public static final String LOG_FILE = "cucumber-scenarios.log";
+    public static final String FEATURE_DICTIONARY_FILE = "cucumber-features.dict";
+    public static final String FEATURE_LOG_FILE = "cucumber-features.log";
+    public static final String BUILD_FILE_EXTENSION = ".scenarios";
+
+    /**
+     * Number of builds kept in the history of the job.
+     */
+    static final int MAX_BUILDS = SystemProperties.getInteger(ScenarioHistory.class.getName() + ".maxBuilds", 500);
+
+    private static final int DICTIONARY_MAGIC = 0x43534431;
+    private static final int LOG_MAGIC = 0x43534c31;
+    private static final int BUILD_MAGIC = 0x43534231;
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+    private static final int OUTCOME_SIZE = 4 + 1 + 8;
+
+    private final File dictionaryFile;
+    private final File logFile;
+    private final ReentrantLock lock;
+
+    public ScenarioHistory(@NonNull File directory) {
+        this(new File(directory, DICTIONARY_FILE), new File(directory, LOG_FILE));
+    }
+
+    private ScenarioHistory(File dictionaryFile, File logFile) {
+        this.dictionaryFile = dictionaryFile;
+        this.logFile = logFile;
+        this.lock = FileLocks.get(logFile);
+    }
+
+    /**
+     * History of the features of the job, which is kept in the same way as the history of the scenarios.
+     */
+    public static ScenarioHistory ofFeatures(@NonNull File directory) {
+        return new ScenarioHistory(new File(directory, FEATURE_DICTIONARY_FILE), new File(directory, FEATURE_LOG_FILE));
+    }
+
+    /**
+     * Result of one scenario in one build.
+     */
+    public static class Outcome {
+
+        private final String id;
+        private final String name;
+        private final Status status;
+        private final long duration;
+
+        public Outcome(String id, String name, Status status, long duration) {
+            this.id = id;
+            this.name = name;
+            this.status = status;
+            this.duration = duration;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+    }
+
+    /**
+     * Outcomes of the scenarios of one build.
+     */
+    public static class Build {
+
+        private final int buildNumber;
+        private final Collection<Outcome> outcomes;
+
+        public Build(int buildNumber, Collection<Outcome> outcomes) {
+            this.buildNumber = buildNumber;
+            this.outcomes = outcomes;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public Collection<Outcome> getOutcomes() {
+            return outcomes;
+        }
+    }
+
+    /**
+     * Statistics of one scenario over the last builds. Durations are in nanoseconds.
+     */
+    public static class Statistics {
+
+        private final String id;
+        private final String name;
+        private final int runs;
+        private final int failures;
+        private final int flips;
+        private final long p50;
+        private final long p90;
+        private final long p95;
+
+        Statistics(String id, String name, int runs, int failures, int flips, long p50, long p90, long p95) {
+            this.id = id;
+            this.name = name;
+            this.runs = runs;
+            this.failures = failures;
+            this.flips = flips;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p95 = p95;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getRuns() {
+            return runs;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return number of times the scenario passed after it failed in the previous build or vice versa
+         */
+        public int getFlips() {
+            return flips;
+        }
+
+        /**
+         * @return flips divided by the number of possible flips, 0 for stable and 1 for alternating scenario
+         */
+        public double getFlipRate() {
+            return runs > 1 ? (double) flips / (runs - 1) : 0;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+    }
+
+    /**
+     * Writes outcomes of the build into its own file.
+     */
+    public static void writeBuildFile(@NonNull File file, @NonNull Collection<Outcome> outcomes) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())))) {
+            output.writeInt(BUILD_MAGIC);
+            output.writeInt(outcomes.size());
+            for (Outcome outcome : outcomes) {
+                writeString(output, outcome.getId());
+                writeString(output, outcome.getName());
+                output.writeByte(CucumberJsonScanner.severity(outcome.getStatus()));
+                output.writeLong(outcome.getDuration());
+            }
+        }
+    }
+
+    /**
+     * Reads outcomes written by {@link #writeBuildFile}.
+     */
+    public static List<Outcome> readBuildFile(@NonNull File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (input.readInt() != BUILD_MAGIC) {
+                throw new IOException("File " + file + " is not a scenario index");
+            }
+            int count = input.readInt();
+            List<Outcome> outcomes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                outcomes.add(new Outcome(readString(input), readString(input), CucumberJsonScanner.readStatus(input), input.readLong()));
+            }
+            return outcomes;
+        }
+    }
+
+    /**
+     * Appends outcomes of the build at the end of the history.
+     */
+    public void append(int buildNumber, @NonNull Collection<Outcome> outcomes) throws IOException {
+        lock.lock();
+        try {
+            Dictionary dictionary = readDictionary();
+            ByteBuffer record = toRecord(new Build(buildNumber, outcomes), dictionary);
+            dictionary.writeNewEntries();
+
+            try (FileChannel channel = FileChannel.open(logFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                Log log = new Log(channel);
+                if (log.validSize < HEADER_SIZE) {
+                    channel.truncate(0);
+                    writeFully(channel, logHeader());
+                } else {
+                    // drops partial record left by the interrupted write, so following records can be found
+                    if (log.validSize != channel.size()) {
+                        channel.truncate(log.validSize);
+                    }
+                    channel.position(log.validSize);
+                }
+                writeFully(channel, record);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Merges the given builds into the history, e.g. the builds read from their own files. Records of the same builds
+     * are replaced, other records (of the builds without stored scenarios or appended in the meantime) are kept.
+     *
+     * @param builds builds in any order
+     */
+    public void merge(@NonNull List<Build> builds) throws IOException {
+        lock.lock();
+        try {
+            Map<Integer, ByteBuffer> records = new TreeMap<>();
+            for (ByteBuffer record : readRecords(0)) {
+                records.put(record.getInt(0), record);
+            }
+            Dictionary dictionary = readDictionary();
+            for (Build build : builds) {
+                records.put(build.getBuildNumber(), toRecord(build, dictionary));
+            }
+            dictionary.writeNewEntries();
+            rewrite(new ArrayList<>(records.values()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest builds, but only when there are at least twice as many builds as the limit. Scenarios which
+     * are not referenced by the remaining builds are removed from the dictionary.
+     *
+     * @param limit number of builds to keep
+     * @return {@code true} when the history was compacted
+     */
+    public boolean compact(int limit) throws IOException {
+        lock.lock();
+        try {
+            if (limit <= 0 || !logFile.isFile()) {
+                return false;
+            }
+            List<ByteBuffer> records;
+            try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+                Log log = new Log(channel);
+                if (log.offsets.size() < 2 * limit) {
+                    return false;
+                }
+                records = log.readRecords(channel, limit);
+            }
+            Dictionary dictionary = compactDictionary(records);
+            // both files are written before they replace the previous ones, so they are replaced one right after another
+            File dictionaryTempFile = dictionary.writeTo(new File(dictionaryFile.getPath() + ".tmp"));
+            File logTempFile = writeLog(records);
+            Files.move(dictionaryTempFile.toPath(), dictionaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(logTempFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Computes statistics of all scenarios executed in the last builds, ordered from the most flaky scenario.
+     *
+     * @param builds number of the last builds, 0 for all of them
+     */
+    public List<Statistics> query(int builds) throws IOException {
+        Aggregate aggregate = aggregate(builds);
+
+        List<Statistics> statistics = new ArrayList<>();
+        for (int scenario = 0; scenario < aggregate.runs.length; scenario++) {
+            int runs = aggregate.runs[scenario];
+            if (runs == 0) {
+                continue;
+            }
+            long[] durations = aggregate.durations[scenario];
+            Arrays.sort(durations, 0, runs);
+            statistics.add(new Statistics(aggregate.dictionary.ids.get(scenario), aggregate.dictionary.names.get(scenario),
+                    runs, aggregate.failures[scenario], aggregate.flips[scenario],
+                    percentile(durations, runs, 50), percentile(durations, runs, 90), percentile(durations, runs, 95)));
+        }
+        statistics.sort(Comparator.comparingDouble(Statistics::getFlipRate).reversed()
+                .thenComparing(Comparator.comparingInt(Statistics::getFailures).reversed())
+                .thenComparing(Statistics::getId));
+        return statistics;
+    }
+
+    /**
+     * Computes percentile of the durations of every scenario executed in the last builds.
+     *
+     * @param builds     number of the last builds, 0 for all of them
+     * @param percentile percentile of the durations, from 1 to 100
+     * @param minRuns    minimum number of runs of the scenario, scenarios with less runs are left out
+     * @return percentiles in nanoseconds by the scenario id
+     */
+    public Map<String, Long> getDurationPercentiles(int builds, int percentile, int minRuns) throws IOException {
+        Aggregate aggregate = aggregate(builds);
+
+        Map<String, Long> percentiles = new HashMap<>();
+        for (int scenario = 0; scenario < aggregate.runs.length; scenario++) {
+            int runs = aggregate.runs[scenario];
+            if (runs == 0 || runs < minRuns) {
+                continue;
+            }
+            long[] durations = aggregate.durations[scenario];
+            Arrays.sort(durations, 0, runs);
+            percentiles.put(aggregate.dictionary.ids.get(scenario), percentile(durations, runs, percentile));
+        }
+        return percentiles;
+    }
+
+    /**
+     * Outcomes of the last builds aggregated by the index of the scenario.
+     */
+    private static final class Aggregate {
+        private Dictionary dictionary;
+        private int[] runs;
+        private int[] failures;
+        private int[] flips;
+        private long[][] durations;
+    }
+
+    private Aggregate aggregate(int builds) throws IOException {
+        Aggregate aggregate = new Aggregate();
+        lock.lock();
+        try {
+            List<ByteBuffer> records = readRecords(builds);
+            aggregate.dictionary = readDictionary();
+            int scenarios = aggregate.dictionary.ids.size();
+            int[] runs = new int[scenarios];
+            int[] failures = new int[scenarios];
+            int[] flips = new int[scenarios];
+            // 0 when there was no passed or failed result yet, then code of the last of them
+            byte[] lastResult = new byte[scenarios];
+            long[][] durations = new long[scenarios][];
+
+            for (ByteBuffer record : records) {
+                int count = record.getInt(4);
+                int position = RECORD_HEADER_SIZE;
+                for (int i = 0; i < count; i++, position += OUTCOME_SIZE) {
+                    int scenario = record.getInt(position);
+                    byte status = record.get(position + 4);
+                    long duration = record.getLong(position + 5);
+                    if (scenario < 0 || scenario >= scenarios) {
+                        continue;
+                    }
+                    if (durations[scenario] == null) {
+                        durations[scenario] = new long[Math.min(records.size(), 16)];
+                    } else if (durations[scenario].length == runs[scenario]) {
+                        durations[scenario] = Arrays.copyOf(durations[scenario], runs[scenario] * 2);
+                    }
+                    durations[scenario][runs[scenario]++] = duration;
+
+                    byte result = status == 0 ? (byte) 1 : status == CucumberJsonScanner.STATUSES.length - 1 ? (byte) 2 : 0;
+                    if (result == 2) {
+                        failures[scenario]++;
+                    }
+                    if (result != 0) {
+                        if (lastResult[scenario] != 0 && lastResult[scenario] != result) {
+                            flips[scenario]++;
+                        }
+                        lastResult[scenario] = result;
+                    }
+                }
+            }
+            aggregate.runs = runs;
+            aggregate.failures = failures;
+            aggregate.flips = flips;
+            aggregate.durations = durations;
+        } finally {
+            lock.unlock();
+        }
+        return aggregate;
+    }
+
+    /**
+     * Nearest-rank percentile of the sorted values.
+     */
+    static long percentile(long[] sortedValues, int count, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sortedValues[Math.max(0, Math.min(count, rank) - 1)];
+    }
+
+    private ByteBuffer toRecord(Build build, Dictionary dictionary) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + build.getOutcomes().size() * OUTCOME_SIZE);
+        record.putInt(build.getBuildNumber());
+        record.putInt(build.getOutcomes().size());
+        for (Outcome outcome : build.getOutcomes()) {
+            record.putInt(dictionary.indexOf(outcome.getId(), outcome.getName()));
+            record.put((byte) CucumberJsonScanner.severity(outcome.getStatus()));
+            record.putLong(outcome.getDuration());
+        }
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Creates dictionary of the scenarios referenced by the records and changes the records to refer to it.
+     */
+    private Dictionary compactDictionary(List<ByteBuffer> records) throws IOException {
+        Dictionary dictionary = readDictionary();
+        Dictionary compacted = new Dictionary();
+        // index in the compacted dictionary increased by one, 0 for the scenario which was not referenced yet
+        int[] indexes = new int[dictionary.ids.size()];
+        for (ByteBuffer record : records) {
+            int count = record.getInt(4);
+            for (int i = 0, position = RECORD_HEADER_SIZE; i < count; i++, position += OUTCOME_SIZE) {
+                int scenario = record.getInt(position);
+                if (scenario < 0 || scenario >= indexes.length) {
+                    // outcome is ignored by queries as before
+                    record.putInt(position, -1);
+                    continue;
+                }
+                if (indexes[scenario] == 0) {
+                    indexes[scenario] = compacted.indexOf(dictionary.ids.get(scenario), dictionary.names.get(scenario)) + 1;
+                }
+                record.putInt(position, indexes[scenario] - 1);
+            }
+        }
+        return compacted;
+    }
+
+    private void rewrite(List<ByteBuffer> records) throws IOException {
+        Files.move(writeLog(records).toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the records into the temporary file, which then replaces the log.
+     */
+    private File writeLog(List<ByteBuffer> records) throws IOException {
+        File tempFile = new File(logFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, logHeader());
+            for (ByteBuffer record : records) {
+                writeFully(channel, record);
+            }
+        }
+        return tempFile;
+    }
+
+    private static ByteBuffer logHeader() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(LOG_MAGIC);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Reads the last records of the log into the heap. The log is neither mapped nor kept open, so it can be replaced
+     * afterwards, which is not possible on Windows while the file is mapped.
+     *
+     * @param limit number of the last records, 0 for all of them
+     */
+    private List<ByteBuffer> readRecords(int limit) throws IOException {
+        if (!logFile.isFile()) {
+            return Collections.emptyList();
+        }
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            return new Log(channel).readRecords(channel, limit);
+        }
+    }
+
+    /**
+     * Offsets of the complete records of the log. Only headers of the records are read to find them, so finding
+     * records is cheap even for long history.
+     */
+    private final class Log {
+
+        private final List<Long> offsets = new ArrayList<>();
+        private final long validSize;
+
+        Log(FileChannel channel) throws IOException {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                validSize = size;
+                return;
+            }
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            header.limit(HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != LOG_MAGIC) {
+                throw new IOException("File " + logFile + " is not a scenario history");
+            }
+            long position = HEADER_SIZE;
+            while (position + RECORD_HEADER_SIZE <= size) {
+                header.clear();
+                readFully(channel, header, position);
+                int count = header.getInt(4);
+                long end = position + RECORD_HEADER_SIZE + (long) count * OUTCOME_SIZE;
+                if (count < 0 || end > size) {
+                    break;
+                }
+                offsets.add(position);
+                position = end;
+            }
+            validSize = position;
+        }
+
+        /**
+         * Reads the last records with one read.
+         *
+         * @param limit number of the last records, 0 for all of them
+         */
+        List<ByteBuffer> readRecords(FileChannel channel, int limit) throws IOException {
+            int first = limit > 0 ? Math.max(0, offsets.size() - limit) : 0;
+            if (first == offsets.size()) {
+                return Collections.emptyList();
+            }
+            long start = offsets.get(first);
+            if (validSize - start > Integer.MAX_VALUE) {
+                throw new IOException("Scenario history " + logFile + " is too large");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) (validSize - start));
+            readFully(channel, buffer, start);
+
+            List<ByteBuffer> records = new ArrayList<>(offsets.size() - first);
+            for (int i = first; i < offsets.size(); i++) {
+                ByteBuffer record = buffer.duplicate();
+                record.limit((int) ((i + 1 < offsets.size() ? offsets.get(i + 1) : validSize) - start));
+                record.position((int) (offsets.get(i) - start));
+                records.add(record.slice());
+            }
+            return records;
+        }
+    }
+
+    private Dictionary readDictionary() throws IOException {
+        Dictionary dictionary = new Dictionary();
+        if (!dictionaryFile.isFile()) {
+            return dictionary;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(dictionaryFile.toPath())))) {
+            if (input.readInt() != DICTIONARY_MAGIC) {
+                throw new IOException("File " + dictionaryFile + " is not a scenario dictionary");
+            }
+            dictionary.validSize = HEADER_SIZE;
+            while (true) {
+                String id;
+                String name;
+                try {
+                    id = readString(input);
+                    name = readString(input);
+                } catch (EOFException e) {
+                    // end of the file or partial entry left by the interrupted write
+                    break;
+                }
+                dictionary.add(id, name);
+                dictionary.validSize += 8 + utf8Length(id) + utf8Length(name);
+            }
+        } catch (EOFException e) {
+            // header was not written completely
+        }
+        return dictionary;
+    }
+
+    /**
+     * Scenario ids by their index, with the entries which are yet to be written.
+     */
+    private final class Dictionary {
+
+        private final List<String> ids = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private long validSize;
+        private int writtenEntries;
+
+        void add(String id, String name) {
+            indexes.putIfAbsent(id, ids.size());
+            ids.add(id);
+            names.add(name);
+            writtenEntries = ids.size();
+        }
+
+        int indexOf(String id, String name) {
+            Integer index = indexes.get(id);
+            if (index == null) {
+                index = ids.size();
+                indexes.put(id, index);
+                ids.add(id);
+                names.add(name);
+            }
+            return index;
+        }
+
+        void writeNewEntries() throws IOException {
+            if (writtenEntries == ids.size()) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(dictionaryFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // entries are appended after the last complete entry, the log never refers to the partial one
+                channel.truncate(validSize);
+                channel.position(validSize);
+                try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new ChannelOutputStream(channel)))) {
+                    if (validSize == 0) {
+                        output.writeInt(DICTIONARY_MAGIC);
+                    }
+                    for (int i = writtenEntries; i < ids.size(); i++) {
+                        writeString(output, ids.get(i));
+                        writeString(output, names.get(i));
+                    }
+                }
+            }
+            writtenEntries = ids.size();
+        }
+
+        /**
+         * Writes all entries into the file, which then replaces the dictionary.
+         */
+        File writeTo(File file) throws IOException {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())))) {
+                output.writeInt(DICTIONARY_MAGIC);
+                for (int i = 0; i < ids.size(); i++) {
+                    writeString(output, ids.get(i));
+                    writeString(output, names.get(i));
+                }
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Writes to the channel without closing it.
+     */
+    private static final class ChannelOutputStream extends OutputStream {
+
+        private final FileChannel channel;
+
+        ChannelOutputStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeFully(channel, ByteBuffer.wrap(b, off, len));
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of the scenario history");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
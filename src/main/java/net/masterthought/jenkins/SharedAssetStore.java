@@ -0,0 +1,207 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+/**
+ * Content addressed store of the static files (styles, scripts, fonts and images) which are the same in all reports.
+ *
+ * Files of the report are replaced by hard links to the stored file with the same SHA-256, so every build still has
+ * its own complete report directory and is served as before, but identical files take the disk space only once.
+ * Number of hard links works as the reference count: deleting a build removes only its links and stored files not
+ * linked from any report are removed periodically.
+ *
+ * When hard links are not supported (e.g. builds are located on other file system than the store), the files are
+ * left as they are.
+ */
+public final class SharedAssetStore {
+
+    private static final Logger LOGGER = Logger.getLogger(SharedAssetStore.class.getName());
+
+    static final String STORE_DIRECTORY = "cucumber-reports-assets";
+
+    /**
+     * Directories of the report with static files, the same which are served without Content-Security-Policy.
+     */
+    static final List<String> ASSET_DIRECTORIES = Arrays.asList("css", "fonts", "js", "images");
+
+    private SharedAssetStore() {
+    }
+
+    public static File getStoreDirectory() {
+        return new File(Jenkins.get().getRootDir(), STORE_DIRECTORY);
+    }
+
+    /**
+     * Replaces static files of the report by the links to the stored files.
+     *
+     * @param reportDirectory report directory
+     * @param storeDirectory  directory of the store
+     * @return statistics of the sharing
+     * @throws IOException when files could not be read or the store could not be written
+     */
+    public static Result share(File reportDirectory, File storeDirectory) throws IOException {
+        Result result = new Result();
+        for (String directory : ASSET_DIRECTORIES) {
+            File[] files = new File(reportDirectory, directory).listFiles(File::isFile);
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                long size = file.length();
+                try {
+                    if (share(file.toPath(), storeDirectory.toPath())) {
+                        result.linkedFiles++;
+                        result.savedBytes += size;
+                    } else {
+                        result.storedFiles++;
+                    }
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    LOGGER.log(Level.FINE, "Could not share " + file, e);
+                    result.notSharedFiles++;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return {@code true} when the file was linked to already stored one, {@code false} when it was added to the store
+     */
+    private static boolean share(Path file, Path storeDirectory) throws IOException {
+        String hash = calculateHash(file);
+        Path storedFile = storeDirectory.resolve(hash.substring(0, 2)).resolve(hash);
+        Files.createDirectories(storedFile.getParent());
+
+        // stored file can be added by other build or removed by the cleanup at any time, so it is retried once
+        FileSystemException lastException = null;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            if (Files.exists(storedFile)) {
+                Path link = file.resolveSibling(file.getFileName() + ".link");
+                try {
+                    Files.createLink(link, storedFile);
+                } catch (NoSuchFileException e) {
+                    lastException = e;
+                    continue;
+                }
+                Files.move(link, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            }
+            try {
+                Files.createLink(storedFile, file);
+                return false;
+            } catch (FileAlreadyExistsException e) {
+                lastException = e;
+            }
+        }
+        throw lastException;
+    }
+
+    private static String calculateHash(Path file) throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // cannot happen
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                sha256.update(buffer, 0, read);
+            }
+        }
+        return Util.toHexString(sha256.digest());
+    }
+
+    /**
+     * Removes stored files which are not linked from any report.
+     *
+     * @return number of removed files
+     */
+    static int removeUnusedFiles(File storeDirectory) throws IOException {
+        if (!storeDirectory.isDirectory()) {
+            return 0;
+        }
+        AtomicInteger removedFiles = new AtomicInteger();
+        Files.walkFileTree(storeDirectory.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Object links;
+                try {
+                    links = Files.getAttribute(file, "unix:nlink");
+                } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                    // number of links is not known, so it is not safe to remove anything
+                    return FileVisitResult.TERMINATE;
+                }
+                // removing the stored file never breaks the report as the report has its own link to the content
+                if (links instanceof Integer && (Integer) links <= 1 && Files.deleteIfExists(file)) {
+                    removedFiles.incrementAndGet();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return removedFiles.get();
+    }
+
+    public static class Result {
+
+        private int linkedFiles;
+        private int storedFiles;
+        private int notSharedFiles;
+        private long savedBytes;
+
+        @Override
+        public String toString() {
+            return String.format("Shared %d static report files with other builds (%d bytes saved), "
+                            + "added %d files to the shared store, %d files could not be shared",
+                    linkedFiles, savedBytes, storedFiles, notSharedFiles);
+        }
+    }
+
+    /**
+     * Removes stored files of deleted builds once a day.
+     */
+    @Extension
+    public static class Cleanup extends AsyncPeriodicWork {
+
+        public Cleanup() {
+            super("Cucumber reports shared assets cleanup");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return DAY;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException {
+            int removedFiles = removeUnusedFiles(getStoreDirectory());
+            listener.getLogger().println("Removed " + removedFiles + " unused files from " + getStoreDirectory());
+        }
+    }
+}
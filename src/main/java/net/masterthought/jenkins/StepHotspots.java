@@ -0,0 +1,272 @@
+package net.masterthought.jenkins;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import hudson.Util;
+import net.masterthought.cucumber.ReportBuilder;
+
+/**
+ * Durations of the steps aggregated by the location of their step definition (or hook).
+ *
+ * Every step definition gets a slot in primitive arrays, so millions of step executions are aggregated without any
+ * object per execution. Percentiles are computed from logarithmic histogram, which has 8 buckets for every power of two
+ * and so its error is at most 12.5 %.
+ */
+public class StepHotspots {
+
+    public static final String JSON_FILE = "step-hotspots.json";
+    public static final String HTML_FILE = "step-hotspots.html";
+
+    /**
+     * Name of the step definition when its location is not known, e.g. for undefined steps.
+     */
+    static final String UNKNOWN_LOCATION = "(unknown step definition)";
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private String[] locations = new String[16];
+    private long[] counts = new long[16];
+    private long[] totals = new long[16];
+    private long[] maxima = new long[16];
+    private int[][] histograms = new int[16][];
+    private int size;
+
+    /**
+     * Adds one execution of the step.
+     *
+     * @param location location of the step definition, empty when it is not known
+     * @param duration duration in nanoseconds
+     */
+    public void add(String location, long duration) {
+        int index = indexOf(location.isEmpty() ? UNKNOWN_LOCATION : location);
+        long value = Math.max(0, duration);
+        counts[index]++;
+        totals[index] += value;
+        maxima[index] = Math.max(maxima[index], value);
+        histograms[index][bucketOf(value)]++;
+    }
+
+    /**
+     * Adds all executions aggregated by the other instance.
+     */
+    public void addAll(StepHotspots other) {
+        for (int otherIndex = 0; otherIndex < other.size; otherIndex++) {
+            int index = indexOf(other.locations[otherIndex]);
+            counts[index] += other.counts[otherIndex];
+            totals[index] += other.totals[otherIndex];
+            maxima[index] = Math.max(maxima[index], other.maxima[otherIndex]);
+            int[] histogram = histograms[index];
+            int[] otherHistogram = other.histograms[otherIndex];
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                histogram[bucket] += otherHistogram[bucket];
+            }
+        }
+    }
+
+    /**
+     * Writes aggregated executions, only the non-empty buckets of the histograms are stored.
+     */
+    void write(DataOutputStream output) throws IOException {
+        output.writeInt(size);
+        for (int index = 0; index < size; index++) {
+            ScenarioHistory.writeString(output, locations[index]);
+            output.writeLong(counts[index]);
+            output.writeLong(totals[index]);
+            output.writeLong(maxima[index]);
+            int[] histogram = histograms[index];
+            int buckets = 0;
+            for (int count : histogram) {
+                if (count != 0) {
+                    buckets++;
+                }
+            }
+            output.writeShort(buckets);
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                if (histogram[bucket] != 0) {
+                    output.writeShort(bucket);
+                    output.writeInt(histogram[bucket]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads executions written by {@link #write}.
+     */
+    static StepHotspots read(DataInputStream input) throws IOException {
+        StepHotspots steps = new StepHotspots();
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            int index = steps.indexOf(ScenarioHistory.readString(input));
+            steps.counts[index] = input.readLong();
+            steps.totals[index] = input.readLong();
+            steps.maxima[index] = input.readLong();
+            int buckets = input.readShort();
+            for (int j = 0; j < buckets; j++) {
+                int bucket = input.readShort();
+                if (bucket < 0 || bucket >= BUCKETS) {
+                    throw new IOException("Invalid bucket " + bucket);
+                }
+                steps.histograms[index][bucket] = input.readInt();
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * @return number of step definitions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of all step executions
+     */
+    public long getExecutions() {
+        long executions = 0;
+        for (int index = 0; index < size; index++) {
+            executions += counts[index];
+        }
+        return executions;
+    }
+
+    /**
+     * Upper bound of the bucket in which the percentile falls, which is never more than the maximum.
+     */
+    long getPercentile(int index, int percentile) {
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * counts[index]));
+        int[] histogram = histograms[index];
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), maxima[index]);
+            }
+        }
+        return maxima[index];
+    }
+
+    /**
+     * Writes step definitions from the one which took the most time in total.
+     */
+    public void writeJson(File file) throws IOException {
+        try (JsonGenerator generator = new JsonFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("steps");
+            for (int index : sortedByTotal()) {
+                generator.writeStartObject();
+                generator.writeStringField("location", locations[index]);
+                generator.writeNumberField("count", counts[index]);
+                generator.writeNumberField("total", totals[index]);
+                generator.writeNumberField("mean", totals[index] / counts[index]);
+                generator.writeNumberField("p95", getPercentile(index, 95));
+                generator.writeNumberField("max", maxima[index]);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes page with the table of step definitions from the one which took the most time in total.
+     *
+     * @param file  page to write
+     * @param title title of the page
+     */
+    public void writeHtml(File file, String title) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>");
+            writer.write(Util.escape(title));
+            writer.write("</title>\n<link rel=\"stylesheet\" href=\"css/bootstrap.min.css\" type=\"text/css\">\n</head>\n<body>\n");
+            writer.write("<div class=\"container-fluid\">\n<h2>");
+            writer.write(Util.escape(title));
+            writer.write("</h2>\n<p><a href=\"" + ReportBuilder.HOME_PAGE + "\">Features overview</a> | <a href=\"" + JSON_FILE + "\">JSON</a></p>\n");
+            writer.write("<table class=\"table table-sm table-striped\">\n<thead><tr><th>Step definition</th><th>Executions</th>"
+                    + "<th>Total</th><th>Mean</th><th>95th percentile</th><th>Max</th></tr></thead>\n<tbody>\n");
+            for (int index : sortedByTotal()) {
+                writer.write("<tr><td>");
+                writer.write(Util.escape(locations[index]));
+                writer.write("</td><td>" + counts[index] + "</td><td>" + formatDuration(totals[index])
+                        + "</td><td>" + formatDuration(totals[index] / counts[index])
+                        + "</td><td>" + formatDuration(getPercentile(index, 95))
+                        + "</td><td>" + formatDuration(maxima[index]) + "</td></tr>\n");
+            }
+            writer.write("</tbody>\n</table>\n</div>\n</body>\n</html>\n");
+        }
+    }
+
+    private static String formatDuration(long nanos) {
+        return String.format("%.3f s", nanos / 1e9);
+    }
+
+    private int[] sortedByTotal() {
+        Integer[] sorted = new Integer[size];
+        for (int index = 0; index < size; index++) {
+            sorted[index] = index;
+        }
+        Arrays.sort(sorted, (first, second) -> Long.compare(totals[second], totals[first]));
+        int[] result = new int[size];
+        for (int index = 0; index < size; index++) {
+            result[index] = sorted[index];
+        }
+        return result;
+    }
+
+    private int indexOf(String location) {
+        Integer index = indexes.get(location);
+        if (index != null) {
+            return index;
+        }
+        if (size == locations.length) {
+            int capacity = size * 2;
+            locations = Arrays.copyOf(locations, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            totals = Arrays.copyOf(totals, capacity);
+            maxima = Arrays.copyOf(maxima, capacity);
+            histograms = Arrays.copyOf(histograms, capacity);
+        }
+        locations[size] = location;
+        histograms[size] = new int[BUCKETS];
+        indexes.put(location, size);
+        return size++;
+    }
+
+    /**
+     * Values below {@link #SUB_BUCKETS} have bucket of their own, every higher power of two is split into
+     * {@link #SUB_BUCKETS} buckets.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
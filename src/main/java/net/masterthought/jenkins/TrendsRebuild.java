@@ -0,0 +1,208 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+
+/**
+ * Rebuilds the trends of the job from the summaries stored with its builds, e.g. after the limit of trends was raised
+ * or the trends were lost. History of the scenarios is rebuilt from the outcomes stored with the builds as well.
+ *
+ * Builds are loaded in the background by a few threads only, so running builds are not slowed down. Builds published
+ * by previous versions of the plugin have no summary and are skipped, their trends already in the log (e.g. imported
+ * from cucumber-trends.json) are kept.
+ */
+public class TrendsRebuild implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(TrendsRebuild.class.getName());
+
+    /**
+     * Number of builds loaded at the same time.
+     */
+    static final int PARALLELISM = SystemProperties.getInteger(TrendsRebuild.class.getName() + ".parallelism", 2);
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "CucumberTrendsRebuild"));
+
+    /**
+     * Last rebuild of every trends log, kept also after it finished so its result can be presented.
+     */
+    private static final Map<File, TrendsRebuild> REBUILDS = new ConcurrentHashMap<>();
+
+    private final Job<?, ?> job;
+    private final String urlName;
+    private final TrendsStore trendsStore;
+    private final ScenarioHistory scenarioHistory;
+
+    private final AtomicInteger processedBuilds = new AtomicInteger();
+    private final AtomicInteger foundSummaries = new AtomicInteger();
+    private volatile int totalBuilds = -1;
+    private final long startTime = System.currentTimeMillis();
+    private volatile long finishTime;
+    private volatile String error;
+
+    private TrendsRebuild(Job<?, ?> job, String urlName, File trendsDirectory) {
+        this.job = job;
+        this.urlName = urlName;
+        this.trendsStore = new TrendsStore(new File(trendsDirectory, TrendsStore.LOG_FILE));
+        this.scenarioHistory = new ScenarioHistory(trendsDirectory);
+    }
+
+    /**
+     * Starts rebuild of the trends unless it is already running.
+     *
+     * @param job             job which builds are scanned
+     * @param urlName         URL name of the report actions which summaries are collected
+     * @param trendsDirectory directory with the trends log
+     * @return started or already running rebuild
+     */
+    public static TrendsRebuild start(Job<?, ?> job, String urlName, File trendsDirectory) {
+        File logFile = new File(trendsDirectory, TrendsStore.LOG_FILE);
+        synchronized (REBUILDS) {
+            TrendsRebuild running = REBUILDS.get(logFile);
+            if (running != null && !running.isFinished()) {
+                return running;
+            }
+            TrendsRebuild rebuild = new TrendsRebuild(job, urlName, trendsDirectory);
+            REBUILDS.put(logFile, rebuild);
+            EXECUTOR.submit(rebuild);
+            return rebuild;
+        }
+    }
+
+    /**
+     * @return the last rebuild of the trends, {@code null} when the trends were never rebuilt since Jenkins started
+     */
+    @CheckForNull
+    public static TrendsRebuild get(File trendsDirectory) {
+        return REBUILDS.get(new File(trendsDirectory, TrendsStore.LOG_FILE));
+    }
+
+    @Override
+    public void run() {
+        try {
+            List<Integer> buildNumbers = new ArrayList<>(job.getBuildsAsMap().keySet());
+            totalBuilds = buildNumbers.size();
+
+            List<TrendsStore.Entry> entries = Collections.synchronizedList(new ArrayList<>());
+            List<ScenarioHistory.Build> scenarioBuilds = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger nextBuild = new AtomicInteger();
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, PARALLELISM); i++) {
+                workers.add(EXECUTOR.submit(() -> {
+                    int index;
+                    while ((index = nextBuild.getAndIncrement()) < buildNumbers.size()) {
+                        Run<?, ?> run = job.getBuildByNumber(buildNumbers.get(index));
+                        TrendsStore.Entry entry = readEntry(run);
+                        if (entry != null) {
+                            entries.add(entry);
+                            foundSummaries.incrementAndGet();
+                        }
+                        ScenarioHistory.Build scenarioBuild = readScenarios(run);
+                        if (scenarioBuild != null) {
+                            scenarioBuilds.add(scenarioBuild);
+                        }
+                        processedBuilds.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+
+            trendsStore.merge(entries);
+            LOGGER.log(Level.INFO, "Rebuilt trends of {0} from {1} builds", new Object[]{job.getFullName(), entries.size()});
+            if (!scenarioBuilds.isEmpty()) {
+                scenarioBuilds.sort(Comparator.comparingInt(ScenarioHistory.Build::getBuildNumber));
+                scenarioHistory.merge(scenarioBuilds.subList(Math.max(0, scenarioBuilds.size() - ScenarioHistory.MAX_BUILDS), scenarioBuilds.size()));
+                LOGGER.log(Level.INFO, "Rebuilt history of scenarios of {0} from {1} builds", new Object[]{job.getFullName(), scenarioBuilds.size()});
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not rebuild trends of " + job.getFullName(), e);
+            error = e.toString();
+        } finally {
+            finishTime = System.currentTimeMillis();
+        }
+    }
+
+    @CheckForNull
+    private TrendsStore.Entry readEntry(@CheckForNull Run<?, ?> run) {
+        if (run == null) {
+            return null;
+        }
+        for (SafeArchiveServingRunAction action : run.getActions(SafeArchiveServingRunAction.class)) {
+            if (urlName.equals(action.getUrlName()) && action.getSummary() != null) {
+                return new TrendsStore.Entry(run.getNumber(), action.getSummary());
+            }
+        }
+        return null;
+    }
+
+    @CheckForNull
+    private ScenarioHistory.Build readScenarios(@CheckForNull Run<?, ?> run) {
+        if (run == null) {
+            return null;
+        }
+        File buildFile = new File(run.getRootDir(), urlName + ScenarioHistory.BUILD_FILE_EXTENSION);
+        if (!buildFile.isFile()) {
+            return null;
+        }
+        try {
+            return new ScenarioHistory.Build(run.getNumber(), ScenarioHistory.readBuildFile(buildFile));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read outcomes of scenarios from " + buildFile, e);
+            return null;
+        }
+    }
+
+    public boolean isFinished() {
+        return finishTime != 0;
+    }
+
+    /**
+     * @return number of builds to scan, or -1 when the builds are being listed
+     */
+    public int getTotalBuilds() {
+        return totalBuilds;
+    }
+
+    public int getProcessedBuilds() {
+        return processedBuilds.get();
+    }
+
+    public int getFoundSummaries() {
+        return foundSummaries.get();
+    }
+
+    /**
+     * @return number of builds scanned per second
+     */
+    public double getThroughput() {
+        long elapsed = (isFinished() ? finishTime : System.currentTimeMillis()) - startTime;
+        return elapsed > 0 ? processedBuilds.get() * 1000.0 / elapsed : 0;
+    }
+
+    @CheckForNull
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,372 @@
+package net.masterthought.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Append-only log of the trends, one fixed-size record per build, ordered by the build number.
+ *
+ * Publishing a build appends one record, no matter how long the history is. Only a build published after a newer one
+ * (e.g. when reports are rendered in the background) rewrites the log to insert its record in place. The JSON file in the format of
+ * cucumber-trends.json, which the report generator expects, is written on demand from the last records of the log.
+ * The log is compacted once it has twice as many records as the limit of the trends.
+ *
+ * Concurrent builds (and parallel stages of one build) can update the same log. Changes of one log are serialized by
+ * the lock of the file (see {@link FileLocks}), so publishers never wait for each other because of unrelated trends.
+ */
+public class TrendsStore {
+
+    public static final String LOG_FILE = "cucumber-trends.log";
+
+    private static final int MAGIC = 0x43545231;
+    private static final int HEADER_SIZE = 4;
+    static final int RECORD_SIZE = 4 + 12 * 4 + 8;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File file;
+    private final ReentrantLock lock;
+
+    public TrendsStore(@NonNull File file) {
+        this.file = file;
+        this.lock = FileLocks.get(file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Trends of one build.
+     */
+    public static class Entry {
+
+        private final int buildNumber;
+        private final ReportSummary summary;
+
+        public Entry(int buildNumber, ReportSummary summary) {
+            this.buildNumber = buildNumber;
+            this.summary = summary;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public ReportSummary getSummary() {
+            return summary;
+        }
+    }
+
+    /**
+     * Imports the trends stored in JSON file by previous versions of the plugin, when the log does not exist yet.
+     *
+     * @param jsonFile trends JSON file
+     * @return {@code true} when the trends were imported
+     */
+    public boolean migrate(@NonNull File jsonFile) throws IOException {
+        lock.lock();
+        try {
+            return migrateLocked(jsonFile);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean migrateLocked(File jsonFile) throws IOException {
+        if (file.exists() || !jsonFile.isFile()) {
+            return false;
+        }
+
+        JsonNode trends = MAPPER.readTree(jsonFile);
+        JsonNode buildNumbers = trends.path("buildNumbers");
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < buildNumbers.size(); i++) {
+            int buildNumber;
+            try {
+                buildNumber = Integer.parseInt(buildNumbers.get(i).asText());
+            } catch (NumberFormatException e) {
+                // only builds of Jenkins are stored
+                continue;
+            }
+            entries.add(new Entry(buildNumber, new ReportSummary(
+                    trends.path("totalFeatures").path(i).asInt(),
+                    trends.path("passedFeatures").path(i).asInt(),
+                    trends.path("failedFeatures").path(i).asInt(),
+                    trends.path("totalScenarios").path(i).asInt(),
+                    trends.path("passedScenarios").path(i).asInt(),
+                    trends.path("failedScenarios").path(i).asInt(),
+                    trends.path("totalSteps").path(i).asInt(),
+                    trends.path("passedSteps").path(i).asInt(),
+                    trends.path("failedSteps").path(i).asInt(),
+                    trends.path("skippedSteps").path(i).asInt(),
+                    trends.path("pendingSteps").path(i).asInt(),
+                    trends.path("undefinedSteps").path(i).asInt(),
+                    trends.path("durations").path(i).asLong())));
+        }
+        rewrite(entries);
+        return true;
+    }
+
+    /**
+     * Appends trends of the build at the end of the log, or inserts them by the build number when a newer build is
+     * already in the log.
+     */
+    public void append(int buildNumber, @NonNull ReportSummary summary) throws IOException {
+        lock.lock();
+        try {
+            appendLocked(buildNumber, summary);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void appendLocked(int buildNumber, ReportSummary summary) throws IOException {
+        List<Entry> lastEntries = readLastLocked(1);
+        if (!lastEntries.isEmpty() && lastEntries.get(0).getBuildNumber() >= buildNumber) {
+            mergeLocked(Collections.singletonList(new Entry(buildNumber, summary)));
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE);
+            if (size == 0) {
+                buffer.putInt(MAGIC);
+            } else {
+                // drops partial record left by the interrupted write, so following records stay aligned
+                long validSize = getValidSize(size);
+                if (validSize != size) {
+                    channel.truncate(validSize);
+                }
+            }
+            writeRecord(buffer, new Entry(buildNumber, summary));
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Merges the given entries into the log, e.g. the entries rebuilt from the builds. Entries of the same builds are
+     * replaced, other entries (imported from cucumber-trends.json, of the builds without stored summary or appended in
+     * the meantime) are kept.
+     *
+     * @param entries entries in any order
+     */
+    public void merge(@NonNull List<Entry> entries) throws IOException {
+        lock.lock();
+        try {
+            mergeLocked(entries);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void mergeLocked(List<Entry> entries) throws IOException {
+        Map<Integer, Entry> newEntries = new TreeMap<>();
+        for (Entry entry : readLastLocked(0)) {
+            newEntries.put(entry.getBuildNumber(), entry);
+        }
+        for (Entry entry : entries) {
+            newEntries.put(entry.getBuildNumber(), entry);
+        }
+        rewrite(new ArrayList<>(newEntries.values()));
+    }
+
+    /**
+     * Reads the last entries of the log.
+     *
+     * @param limit maximum number of entries, 0 for all of them
+     * @return entries from the oldest to the newest one
+     */
+    public List<Entry> readLast(int limit) throws IOException {
+        // log is replaced by the compaction, so the file has to be opened while it is not being replaced
+        lock.lock();
+        try {
+            return readLastLocked(limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Entry> readLastLocked(int limit) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!file.isFile()) {
+            return entries;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return entries;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("File " + file + " is not a trends log");
+            }
+
+            long records = (getValidSize(size) - HEADER_SIZE) / RECORD_SIZE;
+            long first = limit > 0 ? Math.max(0, records - limit) : 0;
+            ByteBuffer buffer = ByteBuffer.allocate((int) ((records - first) * RECORD_SIZE));
+            readFully(channel, buffer, HEADER_SIZE + first * RECORD_SIZE);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                entries.add(readRecord(buffer));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Removes the oldest entries, but only when there are at least twice as many entries as the limit, so the log is
+     * rewritten once per limit builds.
+     *
+     * @param limit number of entries to keep, 0 to keep all of them
+     * @return {@code true} when the log was compacted
+     */
+    public boolean compact(int limit) throws IOException {
+        lock.lock();
+        try {
+            return compactLocked(limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean compactLocked(int limit) throws IOException {
+        if (limit <= 0 || !file.isFile()) {
+            return false;
+        }
+        long records = (getValidSize(file.length()) - HEADER_SIZE) / RECORD_SIZE;
+        if (records < 2L * limit) {
+            return false;
+        }
+        rewrite(readLastLocked(limit));
+        return true;
+    }
+
+    /**
+     * Writes the last entries in the format of cucumber-trends.json.
+     *
+     * @param jsonFile file to write
+     * @param limit    maximum number of entries, 0 for all of them
+     */
+    public void writeJson(@NonNull File jsonFile, int limit) throws IOException {
+        List<Entry> entries = readLast(limit);
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(jsonFile, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("buildNumbers");
+            for (Entry entry : entries) {
+                generator.writeString(Integer.toString(entry.getBuildNumber()));
+            }
+            generator.writeEndArray();
+            writeArray(generator, "passedFeatures", entries, ReportSummary::getPassedFeatures);
+            writeArray(generator, "failedFeatures", entries, ReportSummary::getFailedFeatures);
+            writeArray(generator, "totalFeatures", entries, ReportSummary::getFeatures);
+            writeArray(generator, "passedScenarios", entries, ReportSummary::getPassedScenarios);
+            writeArray(generator, "failedScenarios", entries, ReportSummary::getFailedScenarios);
+            writeArray(generator, "totalScenarios", entries, ReportSummary::getScenarios);
+            writeArray(generator, "passedSteps", entries, ReportSummary::getPassedSteps);
+            writeArray(generator, "failedSteps", entries, ReportSummary::getFailedSteps);
+            writeArray(generator, "skippedSteps", entries, ReportSummary::getSkippedSteps);
+            writeArray(generator, "pendingSteps", entries, ReportSummary::getPendingSteps);
+            writeArray(generator, "undefinedSteps", entries, ReportSummary::getUndefinedSteps);
+            writeArray(generator, "totalSteps", entries, ReportSummary::getSteps);
+            generator.writeArrayFieldStart("durations");
+            for (Entry entry : entries) {
+                generator.writeNumber(entry.getSummary().getDuration());
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private interface Counter {
+        int get(ReportSummary summary);
+    }
+
+    private static void writeArray(JsonGenerator generator, String name, List<Entry> entries, Counter counter) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (Entry entry : entries) {
+            generator.writeNumber(counter.get(entry.getSummary()));
+        }
+        generator.writeEndArray();
+    }
+
+    private void rewrite(List<Entry> entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + entries.size() * RECORD_SIZE);
+        buffer.putInt(MAGIC);
+        for (Entry entry : entries) {
+            writeRecord(buffer, entry);
+        }
+        buffer.flip();
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long getValidSize(long size) {
+        return size < HEADER_SIZE ? size : HEADER_SIZE + (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of trends log");
+            }
+        }
+    }
+
+    private static void writeRecord(ByteBuffer buffer, Entry entry) {
+        ReportSummary summary = entry.getSummary();
+        buffer.putInt(entry.getBuildNumber());
+        buffer.putInt(summary.getFeatures());
+        buffer.putInt(summary.getPassedFeatures());
+        buffer.putInt(summary.getFailedFeatures());
+        buffer.putInt(summary.getScenarios());
+        buffer.putInt(summary.getPassedScenarios());
+        buffer.putInt(summary.getFailedScenarios());
+        buffer.putInt(summary.getSteps());
+        buffer.putInt(summary.getPassedSteps());
+        buffer.putInt(summary.getFailedSteps());
+        buffer.putInt(summary.getSkippedSteps());
+        buffer.putInt(summary.getPendingSteps());
+        buffer.putInt(summary.getUndefinedSteps());
+        buffer.putLong(summary.getDuration());
+    }
+
+    private static Entry readRecord(ByteBuffer buffer) {
+        int buildNumber = buffer.getInt();
+        return new Entry(buildNumber, new ReportSummary(
+                buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                buffer.getLong()));
+    }
+}
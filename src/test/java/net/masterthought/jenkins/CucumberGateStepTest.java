@@ -0,0 +1,29 @@
+package net.masterthought.jenkins;
+
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class CucumberGateStepTest {
+
+    @Test
+    void failsGateWhenFileCannotBeScanned(JenkinsRule j) throws Exception {
+        WorkflowJob job = j.createProject(WorkflowJob.class);
+        job.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  writeFile file: 'passed.json', text: '[{\"id\":\"login\",\"name\":\"Login\",\"elements\":[]}]'\n"
+                + "  writeFile file: 'broken.json', text: '[{\"id\":'\n"
+                + "  def gate = cucumberGate fileIncludePattern: '*.json'\n"
+                + "  echo \"failed=${gate.failed}\"\n"
+                + "}\n", true));
+
+        WorkflowRun run = j.buildAndAssertSuccess(job);
+
+        j.assertLogContains("Could not scan", run);
+        j.assertLogContains("Missing report result", run);
+        j.assertLogContains("failed=true", run);
+    }
+}
@@ -0,0 +1,137 @@
+package net.masterthought.jenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import hudson.util.FileVisitor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileFinderTest {
+
+    @TempDir
+    private File tempDir;
+
+    @Test
+    void findsAllCategoriesInOneWalk() throws Exception {
+        touch("report.json");
+        touch("target/cucumber/login.json");
+        touch("target/cucumber/logout.JSON");
+        touch("target/cucumber/skipped/search.json");
+        touch("target/Classifications.PROPERTIES");
+        touch("custom/style.css");
+
+        Map<String, List<String>> found = new FileFinder()
+                .add("json", "**/*.json", "**/skipped/**", true)
+                .add("classifications", "**/classifications.properties", null, false)
+                .add("css", "custom/", null, true)
+                .find(tempDir);
+
+        assertEquals(Arrays.asList("report.json", path("target/cucumber/login.json")), sorted(found.get("json")));
+        assertEquals(Collections.singletonList(path("target/Classifications.PROPERTIES")), found.get("classifications"));
+        assertEquals(Collections.singletonList(path("custom/style.css")), found.get("css"));
+    }
+
+    @Test
+    void skipsDefaultExcludes() throws Exception {
+        touch("target/report.json");
+        touch("target/report.json~");
+        touch(".git/report.json");
+        touch("web/.svn/report.json");
+
+        Map<String, List<String>> found = new FileFinder().add("json", "**/*.json, **/*.json~", null, true).find(tempDir);
+
+        assertEquals(Collections.singletonList(path("target/report.json")), found.get("json"));
+    }
+
+    @Test
+    void skipsUnreadableDirectories() throws Exception {
+        touch("target/cucumber/login.json");
+        touch("target/private/secret.json");
+        File unreadable = new File(tempDir, "target/private");
+        assertTrue(unreadable.setReadable(false));
+        try {
+            // permissions are not enforced for the superuser
+            assumeFalse(unreadable.canRead(), "Directory is readable anyway");
+
+            Map<String, List<String>> found = new FileFinder().add("json", "**/*.json", null, true).find(tempDir);
+
+            assertEquals(Collections.singletonList(path("target/cucumber/login.json")), found.get("json"));
+        } finally {
+            unreadable.setReadable(true);
+        }
+    }
+
+    @Test
+    void matchesAntPatterns() {
+        assertTrue(matches("**/*.json", "report.json"));
+        assertTrue(matches("target/**/*.json", "target/report.json"));
+        assertTrue(matches("target/**/*.json", "target/a/b/report.json"));
+        assertTrue(matches("target/*-?.json", "target/report-1.json"));
+        assertFalse(matches("target/*.json", "target/a/report.json"));
+        assertFalse(matches("*.json", "target/report.json"));
+        assertFalse(matches("target/*-?.json", "target/report-10.json"));
+    }
+
+    @Test
+    void prunesDirectoriesWithoutMatchingFiles() {
+        FileFinder.AntPattern include = new FileFinder.AntPattern("target/cucumber/**/*.json", true);
+        assertTrue(include.mayMatchBelow(new String[]{"target"}));
+        assertTrue(include.mayMatchBelow(new String[]{"target", "cucumber", "a", "b"}));
+        assertFalse(include.mayMatchBelow(new String[]{"node_modules"}));
+        assertFalse(include.mayMatchBelow(new String[]{"target", "classes"}));
+
+        FileFinder.AntPattern exclude = new FileFinder.AntPattern("**/node_modules/**", true);
+        assertTrue(exclude.matchesAllBelow(new String[]{"web", "node_modules"}));
+        assertFalse(exclude.matchesAllBelow(new String[]{"web"}));
+    }
+
+    @Test
+    void copiesEveryFileOnce() throws Exception {
+        touch("target/report.json");
+        touch("node_modules/package.json");
+
+        FileFinder finder = new FileFinder()
+                .add("json", "target/*.json", null, true)
+                .add("reports", "target/report.*", null, true);
+        List<String> copied = new ArrayList<>();
+        finder.toDirScanner().scan(tempDir, new FileVisitor() {
+            @Override
+            public void visit(File file, String relativePath) {
+                copied.add(relativePath);
+            }
+        });
+
+        assertEquals(Collections.singletonList("target/report.json"), copied);
+    }
+
+    private static boolean matches(String pattern, String path) {
+        return new FileFinder.AntPattern(pattern, true).matches(path.split("/"));
+    }
+
+    private void touch(String path) throws Exception {
+        File file = new File(tempDir, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.createFile(file.toPath());
+    }
+
+    private static String path(String path) {
+        return path.replace('/', File.separatorChar);
+    }
+
+    private static List<String> sorted(List<String> paths) {
+        List<String> sorted = new ArrayList<>(paths);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,212 @@
+package net.masterthought.jenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.masterthought.cucumber.Configuration;
+import net.masterthought.cucumber.ReportBuilder;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JsonReportStreamerTest {
+
+    private static final int EMBEDDING_SIZE = 16 * 1024 * 1024;
+
+    // embedding read as string would allocate more than twice of its size
+    private static final long MAX_ALLOCATED_BYTES = EMBEDDING_SIZE / 4;
+
+    @TempDir
+    private File tempDir;
+
+    @Test
+    void streamsHugeEmbeddingWithBoundedAllocation() throws Exception {
+        File report = createReport(EMBEDDING_SIZE);
+        File streamed = new File(tempDir, "streamed.json");
+        File embeddings = new File(tempDir, "embeddings");
+        JsonReportStreamer streamer = new JsonReportStreamer(embeddings, JsonReportStreamer.DEFAULT_SPILL_THRESHOLD, 0);
+
+        // bytes allocated by this thread do not depend on the garbage collector, unlike the used heap
+        long allocatedBefore = getAllocatedBytes();
+        streamer.stream(report, streamed);
+        long allocated = getAllocatedBytes() - allocatedBefore;
+
+        assertTrue(allocated < MAX_ALLOCATED_BYTES, "Allocated " + allocated + " bytes while streaming");
+        assertEquals(1, streamer.getSpilledEmbeddings());
+        assertEquals(EMBEDDING_SIZE, streamer.getSpilledBytes());
+
+        File[] storedEmbeddings = embeddings.listFiles();
+        assertNotNull(storedEmbeddings);
+        assertEquals(1, storedEmbeddings.length);
+        assertEquals(EMBEDDING_SIZE, storedEmbeddings[0].length());
+        assertTrue(storedEmbeddings[0].getName().endsWith(".png"));
+        assertTrue(streamed.length() < 1024);
+    }
+
+    @Test
+    void keepsSmallEmbeddingInReport() throws Exception {
+        File report = createReport(1024);
+        File streamed = new File(tempDir, "streamed.json");
+        File embeddings = new File(tempDir, "embeddings");
+        JsonReportStreamer streamer = new JsonReportStreamer(embeddings, JsonReportStreamer.DEFAULT_SPILL_THRESHOLD, 0);
+
+        streamer.stream(report, streamed);
+
+        assertEquals(0, streamer.getSpilledEmbeddings());
+        String content = new String(Files.readAllBytes(streamed.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.contains("\"mime_type\":\"image/png\""));
+        assertTrue(content.length() > 1024);
+    }
+
+    @Test
+    void storesIdenticalMediaOnce() throws Exception {
+        File report = writeReport(scenario("first", "passed", "image/png", "AAAA"), scenario("second", "passed", "image/png", "AAAA"));
+        File streamed = new File(tempDir, "streamed.json");
+        File embeddings = new File(tempDir, "embeddings");
+        JsonReportStreamer streamer = new JsonReportStreamer(embeddings, JsonReportStreamer.DEFAULT_SPILL_THRESHOLD, 0);
+        streamer.setExternalizeMedia(true);
+
+        streamer.stream(report, streamed);
+
+        assertEquals(2, streamer.getSpilledEmbeddings());
+        assertEquals(1, streamer.getDuplicateEmbeddings());
+        assertEquals(3, streamer.getDuplicateBytes());
+        assertEquals(1, embeddings.listFiles().length);
+    }
+
+    @Test
+    void referencesStoredEmbeddings() throws Exception {
+        File report = writeReport(scenario("image", "failed", "image/png", "AAAA"), scenario("video", "failed", "video/mp4", "AAAAAAAA"));
+        File streamed = new File(tempDir, "streamed.json");
+        JsonReportStreamer streamer = new JsonReportStreamer(new File(tempDir, "embeddings"), JsonReportStreamer.DEFAULT_SPILL_THRESHOLD, 0);
+        streamer.setExternalizeMedia(true);
+
+        streamer.stream(report, streamed);
+
+        JsonNode elements = new ObjectMapper().readTree(streamed).path(0).path("elements");
+        JsonNode image = elements.path(0).path("steps").path(0).path("embeddings").path(0);
+        assertEquals("image/url", image.path("mime_type").asText());
+        String imageUrl = new String(image.path("data").binaryValue(), StandardCharsets.UTF_8);
+        assertTrue(imageUrl.matches("embeddings/[0-9a-f]{64}\\.png"), imageUrl);
+        assertTrue(new File(tempDir, imageUrl).isFile());
+
+        JsonNode video = elements.path(1).path("steps").path(0).path("embeddings").path(0);
+        assertEquals("text/html", video.path("mime_type").asText());
+        String link = new String(video.path("data").binaryValue(), StandardCharsets.UTF_8);
+        assertTrue(link.matches("<a href=\"[0-9a-f]{64}\\.mp4\">.*</a>"), link);
+    }
+
+    @Test
+    void showsStoredImagesInGeneratedReport() throws Exception {
+        File report = new File(tempDir, "report.json");
+        Files.write(report.toPath(), ("[{\"id\":\"login\",\"uri\":\"features/login.feature\",\"keyword\":\"Feature\","
+                + "\"name\":\"Login\",\"line\":1,\"elements\":[{\"id\":\"login;scenario\",\"keyword\":\"Scenario\","
+                + "\"name\":\"Scenario\",\"line\":2,\"type\":\"scenario\",\"steps\":[{\"keyword\":\"Given \","
+                + "\"name\":\"step\",\"line\":3,\"result\":{\"status\":\"failed\",\"duration\":1000},"
+                + "\"embeddings\":[{\"mime_type\":\"image/png\",\"data\":\"AAAA\"}]}]}]}]").getBytes(StandardCharsets.UTF_8));
+        File reportDirectory = new File(tempDir, "report");
+        File embeddings = new File(reportDirectory, ReportBuilder.BASE_DIRECTORY + File.separatorChar + JsonReportStreamer.EMBEDDINGS_DIRECTORY);
+        File streamed = new File(tempDir, "streamed.json");
+        JsonReportStreamer streamer = new JsonReportStreamer(embeddings, JsonReportStreamer.DEFAULT_SPILL_THRESHOLD, 0);
+        streamer.setExternalizeMedia(true);
+        streamer.stream(report, streamed);
+        String image = JsonReportStreamer.EMBEDDINGS_DIRECTORY + "/" + embeddings.listFiles()[0].getName();
+
+        Configuration configuration = new Configuration(reportDirectory, "project");
+        configuration.setBuildNumber("1");
+        assertNotNull(new ReportBuilder(Collections.singletonList(streamed.getAbsolutePath()), configuration).generateReports());
+
+        boolean referenced = false;
+        for (File page : FileUtils.listFiles(new File(reportDirectory, ReportBuilder.BASE_DIRECTORY), new String[]{"html"}, false)) {
+            referenced |= FileUtils.readFileToString(page, StandardCharsets.UTF_8).contains("src=\"" + image + "\"");
+        }
+        assertTrue(referenced, "No page shows " + image);
+    }
+
+    @Test
+    void keepsEmbeddingsOnlyOfFailedScenarios() throws Exception {
+        File report = writeReport(scenario("passing", "passed", "text/plain", "cGFzc2Vk"), scenario("failing", "failed", "text/plain", "ZmFpbGVk"));
+        File streamed = new File(tempDir, "streamed.json");
+        JsonReportStreamer streamer = new JsonReportStreamer(new File(tempDir, "embeddings"), JsonReportStreamer.DEFAULT_SPILL_THRESHOLD, 0);
+        streamer.setOnlyFailedScenarios(true);
+
+        streamer.stream(report, streamed);
+
+        assertEquals(1, streamer.getDroppedEmbeddings());
+        assertEquals(6, streamer.getDroppedBytes());
+        String content = new String(Files.readAllBytes(streamed.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.contains("\"data\":\"ZmFpbGVk\""));
+        assertFalse(content.contains("cGFzc2Vk"));
+        assertTrue(content.contains("\"name\":\"passing\""));
+    }
+
+    @Test
+    void dropsEmbeddingsOverBudget() throws Exception {
+        File report = writeReport(scenario("first", "failed", "image/png", "AAAA"), scenario("second", "failed", "image/png", "AAAAAAAA"));
+        JsonReportStreamer streamer = new JsonReportStreamer(new File(tempDir, "embeddings"), JsonReportStreamer.DEFAULT_SPILL_THRESHOLD, 0);
+        AtomicLong budget = new AtomicLong(5);
+        streamer.setBudget(budget);
+
+        streamer.stream(report, new File(tempDir, "streamed.json"));
+
+        assertEquals(1, streamer.getDroppedEmbeddings());
+        assertEquals(6, streamer.getDroppedBytes());
+        assertEquals(2, budget.get());
+    }
+
+    private File writeReport(String... scenarios) throws IOException {
+        File report = new File(tempDir, "report.json");
+        String content = "[{\"id\":\"feature\",\"name\":\"Feature\",\"elements\":[" + String.join(",", scenarios) + "]}]";
+        Files.write(report.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return report;
+    }
+
+    private static String scenario(String name, String status, String mimeType, String data) {
+        return "{\"id\":\"feature;" + name + "\",\"name\":\"" + name + "\",\"type\":\"scenario\",\"steps\":["
+                + "{\"name\":\"step\",\"result\":{\"status\":\"" + status + "\"},"
+                + "\"embeddings\":[{\"mime_type\":\"" + mimeType + "\",\"data\":\"" + data + "\"}]}]}";
+    }
+
+    private File createReport(int embeddingSize) throws IOException {
+        File report = new File(tempDir, "report.json");
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(42).nextBytes(chunk);
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(report))) {
+            out.write(("[{\"id\":\"feature\",\"name\":\"Feature\",\"elements\":[{\"id\":\"feature;scenario\","
+                    + "\"name\":\"Scenario\",\"type\":\"scenario\",\"steps\":[{\"name\":\"step\",\"keyword\":\"Given \","
+                    + "\"result\":{\"status\":\"passed\",\"duration\":1000},"
+                    + "\"embeddings\":[{\"mime_type\":\"image/png\",\"data\":\"").getBytes(StandardCharsets.UTF_8));
+            try (OutputStream base64 = Base64.getEncoder().wrap(CloseShieldOutputStream.wrap(out))) {
+                for (int written = 0; written < embeddingSize; written += chunk.length) {
+                    base64.write(chunk, 0, Math.min(chunk.length, embeddingSize - written));
+                }
+            }
+            out.write("\"}]}]}]}]".getBytes(StandardCharsets.UTF_8));
+        }
+        return report;
+    }
+
+    private static long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,68 @@
+package net.masterthought.jenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JsonReportsReducerTest {
+
+    private static final String FEATURE = "[ {\n  \"id\" : \"login\",\n  \"name\" : \"Login\",\n  \"elements\" : [ {\"id\" : \"login;%s\"} ]\n} ]";
+
+    @TempDir
+    private File tempDir;
+
+    @Test
+    void copiesInvalidFilesAsTheyAre() throws Exception {
+        File input = new File(tempDir, "input");
+        File target = new File(tempDir, "target");
+        write(input, "valid.json", String.format(FEATURE, "valid"));
+        write(input, "empty.json", "");
+        write(input, "malformed.json", "[ {\"id\" : ");
+
+        JsonReportsReducer.Result result = new JsonReportsReducer(target.getAbsolutePath(), "**/*.json", null, null,
+                false, false, 0).invoke(input, null);
+
+        // empty file is compacted to empty file, so only the malformed one is reported
+        assertEquals(1, result.getInvalidFiles().size());
+        assertEquals("", read(target, "empty.json"));
+        assertEquals("[ {\"id\" : ", read(target, "malformed.json"));
+        assertEquals("[{\"id\":\"login\",\"name\":\"Login\",\"elements\":[{\"id\":\"login;valid\"}]}]", read(target, "valid.json"));
+    }
+
+    @Test
+    void mergesOnlyValidFiles() throws Exception {
+        File input = new File(tempDir, "input");
+        File target = new File(tempDir, "target");
+        write(input, "a.json", String.format(FEATURE, "first"));
+        write(input, "b.json", "[ {\"id\" : \"login\", \"elements\" : [ {\"id\" : \"login;broken\"} ]");
+        write(input, "c.json", String.format(FEATURE, "second"));
+        write(input, "d.json", "");
+
+        JsonReportsReducer.Result result = new JsonReportsReducer(target.getAbsolutePath(), "*.json", null, null,
+                false, true, 0).invoke(input, null);
+
+        assertEquals(2, result.getInvalidFiles().size());
+        assertTrue(String.join("\n", result.getInvalidFiles()).contains("b.json"));
+        assertEquals("", read(target, "d.json"));
+        String merged = read(target, "a.json");
+        assertTrue(merged.contains("login;first") && merged.contains("login;second"));
+        assertFalse(merged.contains("login;broken"));
+        assertEquals("[ {\"id\" : \"login\", \"elements\" : [ {\"id\" : \"login;broken\"} ]", read(target, "b.json"));
+    }
+
+    private static void write(File directory, String name, String content) throws Exception {
+        Files.createDirectories(directory.toPath());
+        Files.write(new File(directory, name).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File directory, String name) throws Exception {
+        return new String(Files.readAllBytes(new File(directory, name).toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,77 @@
+package net.masterthought.jenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import net.masterthought.cucumber.Configuration;
+import net.masterthought.cucumber.ReportBuilder;
+import net.masterthought.cucumber.Reportable;
+import net.masterthought.cucumber.json.support.Status;
+import net.masterthought.cucumber.reducers.ReducingMethod;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Verifies that the quality gate evaluated from the scanned files counts the report as the report generator does.
+ */
+class ReportScanParityTest {
+
+    private static final String[] REPORTS = {"login.json", "checkout.json", "login-rerun.json"};
+
+    @TempDir
+    private File tempDir;
+
+    @Test
+    void countsReportAsReportGenerator() throws Exception {
+        List<String> jsonFiles = new ArrayList<>();
+        CucumberJsonScanner scanner = new CucumberJsonScanner(0);
+        ReportScan scan = new ReportScan();
+        for (String report : REPORTS) {
+            File jsonFile = new File(tempDir, report);
+            try (InputStream input = getClass().getResourceAsStream("reports/" + report)) {
+                Files.copy(input, jsonFile.toPath());
+            }
+            jsonFiles.add(jsonFile.getAbsolutePath());
+            ReportScan.FileScan fileScan = new ReportScan.FileScan();
+            scanner.scan(jsonFile, fileScan);
+            scan.add(fileScan);
+        }
+
+        List<Set<Status>> notFailingStatuses = Arrays.asList(EnumSet.noneOf(Status.class), EnumSet.of(Status.SKIPPED),
+                EnumSet.of(Status.UNDEFINED), EnumSet.of(Status.SKIPPED, Status.UNDEFINED));
+        int run = 0;
+        for (boolean mergeFeaturesById : new boolean[]{false, true}) {
+            for (boolean mergeFeaturesWithRetest : new boolean[]{false, true}) {
+                for (Set<Status> statuses : notFailingStatuses) {
+                    Configuration configuration = new Configuration(new File(tempDir, "report-" + run++), "parity");
+                    configuration.setBuildNumber("1");
+                    configuration.setNotFailingStatuses(statuses);
+                    if (mergeFeaturesById) {
+                        configuration.addReducingMethod(ReducingMethod.MERGE_FEATURES_BY_ID);
+                    }
+                    if (mergeFeaturesWithRetest) {
+                        configuration.addReducingMethod(ReducingMethod.MERGE_FEATURES_WITH_RETEST);
+                    }
+                    String options = String.format("mergeFeaturesById=%s, mergeFeaturesWithRetest=%s, notFailingStatuses=%s",
+                            mergeFeaturesById, mergeFeaturesWithRetest, statuses);
+
+                    Reportable reportable = new ReportBuilder(jsonFiles, configuration).generateReports();
+                    ReportSummary summary = scan.getSummary(statuses, mergeFeaturesById, mergeFeaturesWithRetest);
+
+                    assertNotNull(reportable, options);
+                    assertNotNull(summary, options);
+                    assertEquals(ReportSummary.of(reportable).toMap(), summary.toMap(), options);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package net.masterthought.jenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import net.masterthought.cucumber.json.support.Status;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReportScanTest {
+
+    @TempDir
+    private File tempDir;
+
+    private int startedScenarios;
+
+    @Test
+    void countsReportWithoutGeneratingIt() throws Exception {
+        ReportScan scan = scan(
+                feature("login", scenario("login;valid", "passed", "passed"), scenario("login;invalid", "failed", "skipped")),
+                feature("logout", scenario("logout;simple", "passed", "undefined")));
+
+        ReportSummary summary = scan.getSummary(Collections.emptySet(), false, false);
+
+        assertEquals(2, summary.getFeatures());
+        assertEquals(2, summary.getFailedFeatures());
+        assertEquals(3, summary.getScenarios());
+        assertEquals(1, summary.getPassedScenarios());
+        assertEquals(6, summary.getSteps());
+        assertEquals(3, summary.getPassedSteps());
+        assertEquals(1, summary.getFailedSteps());
+        assertEquals(1, summary.getSkippedSteps());
+        assertEquals(1, summary.getUndefinedSteps());
+        assertEquals(6, summary.getDuration());
+
+        ReportSummary tolerant = scan.getSummary(EnumSet.of(Status.UNDEFINED), false, false);
+        assertEquals(1, tolerant.getFailedFeatures());
+        assertEquals(2, tolerant.getPassedScenarios());
+    }
+
+    @Test
+    void replacesRetestedScenarios() throws Exception {
+        ReportScan scan = scan(
+                feature("login", scenario("login;valid", "passed"), scenario("login;invalid", "failed")),
+                feature("login", scenario("login;invalid", "passed")));
+
+        assertEquals(2, scan.getSummary(Collections.emptySet(), false, false).getFeatures());
+        assertEquals(1, scan.getSummary(Collections.emptySet(), true, false).getFeatures());
+        assertEquals(3, scan.getSummary(Collections.emptySet(), true, false).getScenarios());
+
+        ReportSummary retested = scan.getSummary(Collections.emptySet(), false, true);
+        assertEquals(1, retested.getFeatures());
+        assertEquals(0, retested.getFailedFeatures());
+        assertEquals(2, retested.getScenarios());
+        assertEquals(0, retested.getFailedSteps());
+    }
+
+    @Test
+    void countsBackgroundAsElementOfItsOwn() throws Exception {
+        String background = "{\"type\":\"background\",\"steps\":[" + step("failed", 5) + "]}";
+        String scenario = "{\"id\":\"login;valid\",\"type\":\"scenario\",\"steps\":[" + step("skipped", 1) + "],"
+                + "\"after\":[{\"result\":{\"status\":\"passed\",\"duration\":100}}]}";
+        ReportScan scan = scan(feature("login", background, scenario));
+
+        ReportSummary summary = scan.getSummary(EnumSet.of(Status.SKIPPED), false, false);
+        assertEquals(1, summary.getFailedFeatures());
+        assertEquals(1, summary.getScenarios());
+        assertEquals(1, summary.getPassedScenarios());
+        assertEquals(2, summary.getSteps());
+        assertEquals(1, summary.getFailedSteps());
+        // hooks do not take time of the report
+        assertEquals(6, summary.getDuration());
+
+        // but the background fails the scenario in the history
+        assertEquals(Status.FAILED, scan.getScenarios().iterator().next().getStatus());
+        assertEquals(106, scan.getScenarios().iterator().next().getDuration());
+    }
+
+    @Test
+    void failsScenarioOnFailedHook() throws Exception {
+        String scenario = "{\"id\":\"login;valid\",\"type\":\"scenario\",\"steps\":[" + step("skipped", 1) + "],"
+                + "\"before\":[{\"result\":{\"status\":\"skipped\"}}]}";
+        ReportScan scan = scan(feature("login", scenario));
+
+        ReportSummary summary = scan.getSummary(EnumSet.of(Status.SKIPPED), false, false);
+        assertEquals(0, summary.getPassedScenarios());
+        assertEquals(1, summary.getSkippedSteps());
+    }
+
+    @Test
+    void missesSummaryWhenReportIsNotGenerated() throws Exception {
+        assertNull(scan().getSummary(Collections.emptySet(), false, false));
+        // file without features
+        assertNull(scan("").getSummary(Collections.emptySet(), false, false));
+
+        String withoutStartTime = "{\"id\":\"login;valid\",\"type\":\"scenario\",\"steps\":[" + step("passed", 1) + "]}";
+        ReportScan retested = scan(feature("login", withoutStartTime), feature("login", withoutStartTime));
+        assertEquals(2, retested.getSummary(Collections.emptySet(), true, false).getScenarios());
+        assertNull(retested.getSummary(Collections.emptySet(), false, true));
+    }
+
+    private ReportScan scan(String... features) throws Exception {
+        CucumberJsonScanner scanner = new CucumberJsonScanner(0);
+        ReportScan scan = new ReportScan();
+        for (int i = 0; i < features.length; i++) {
+            File jsonFile = new File(tempDir, i + ".json");
+            Files.write(jsonFile.toPath(), ("[" + features[i] + "]").getBytes(StandardCharsets.UTF_8));
+            ReportScan.FileScan fileScan = new ReportScan.FileScan();
+            scanner.scan(jsonFile, fileScan);
+            scan.add(fileScan);
+        }
+        return scan;
+    }
+
+    private static String feature(String id, String... scenarios) {
+        return "{\"id\":\"" + id + "\",\"name\":\"" + id + "\",\"elements\":[" + String.join(",", scenarios) + "]}";
+    }
+
+    /**
+     * Creates scenario which started after all scenarios created before.
+     */
+    private String scenario(String id, String... statuses) {
+        StringBuilder steps = new StringBuilder();
+        for (String status : statuses) {
+            if (steps.length() > 0) {
+                steps.append(',');
+            }
+            steps.append(step(status, 1));
+        }
+        String startTime = Instant.parse("2024-01-01T00:00:00Z").plusSeconds(startedScenarios++).toString();
+        return "{\"id\":\"" + id + "\",\"name\":\"" + id + "\",\"type\":\"scenario\",\"start_timestamp\":\"" + startTime + "\","
+                + "\"steps\":[" + steps + "]}";
+    }
+
+    private static String step(String status, long duration) {
+        return "{\"name\":\"step\",\"match\":{\"location\":\"Steps.step()\"},\"result\":{\"status\":\"" + status
+                + "\",\"duration\":" + duration + "}}";
+    }
+}
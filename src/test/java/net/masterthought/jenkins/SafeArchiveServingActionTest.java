@@ -0,0 +1,210 @@
+package net.masterthought.jenkins;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses.HttpResponseException;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+class SafeArchiveServingActionTest {
+
+    private static final String PAGE = "overview-features.html";
+    private static final String COMPRESSED_PAGE = "report-feature_login.html";
+    private static final String LARGE_PAGE = "report-feature_checkout.html";
+    private static final String GZIP = "gzip, deflate";
+
+    @TempDir
+    private File tempDir;
+
+    private File rootDir;
+    private SafeArchiveServingAction action;
+
+    @BeforeEach
+    void createReport() throws Exception {
+        rootDir = new File(tempDir, "cucumber-html-reports");
+        write(PAGE, page("Overview").getBytes(StandardCharsets.UTF_8));
+        write(COMPRESSED_PAGE, page("Login").getBytes(StandardCharsets.UTF_8));
+        write(COMPRESSED_PAGE + ReportCompressor.GZIP_EXTENSION, gzip(page("Login")));
+        // larger than buffered files, so it is verified and then streamed
+        char[] rows = new char[2 * 1024 * 1024];
+        Arrays.fill(rows, 'x');
+        write(LARGE_PAGE, page(new String(rows)).getBytes(StandardCharsets.UTF_8));
+
+        action = new SafeArchiveServingAction(rootDir, "cucumber-html-reports", PAGE, CucumberReportBaseAction.ICON_NAME, "Cucumber reports");
+        action.processDirectory();
+        ChecksumCache.clear();
+    }
+
+    @Test
+    void servesUnchangedFileWithCachedChecksum() throws Exception {
+        long misses = ChecksumCache.getMisses();
+        Served first = get(PAGE, null, null);
+        assertEquals(misses + 1, ChecksumCache.getMisses());
+
+        long hits = ChecksumCache.getHits();
+        Served second = get(PAGE, null, null);
+        assertEquals(hits + 1, ChecksumCache.getHits());
+
+        assertEquals(HttpServletResponse.SC_OK, second.status);
+        assertArrayEquals(read(PAGE), first.body);
+        assertArrayEquals(read(PAGE), second.body);
+        assertEquals(first.headers.get("ETag"), second.headers.get("ETag"));
+    }
+
+    @Test
+    void refusesFileModifiedAfterCachedVerification() throws Exception {
+        assertEquals(HttpServletResponse.SC_OK, get(PAGE, null, null).status);
+        assertEquals(HttpServletResponse.SC_OK, get(LARGE_PAGE, null, null).status);
+
+        // same size and modification time, only the content differs
+        tamper(PAGE);
+        tamper(LARGE_PAGE);
+
+        assertEquals(HttpServletResponse.SC_FORBIDDEN, get(PAGE, null, null).status);
+        assertEquals(HttpServletResponse.SC_FORBIDDEN, get(LARGE_PAGE, null, null).status);
+    }
+
+    @Test
+    void streamsVerifiedLargeFile() throws Exception {
+        Served served = get(LARGE_PAGE, null, null);
+
+        assertEquals(HttpServletResponse.SC_OK, served.status);
+        assertArrayEquals(read(LARGE_PAGE), served.body);
+    }
+
+    @Test
+    void servesVerifiedCompressedCopy() throws Exception {
+        Served compressed = get(COMPRESSED_PAGE, GZIP, null);
+        assertEquals(HttpServletResponse.SC_OK, compressed.status);
+        assertEquals("gzip", compressed.headers.get("Content-Encoding"));
+        assertEquals("Accept-Encoding", compressed.headers.get("Vary"));
+        assertArrayEquals(read(COMPRESSED_PAGE + ReportCompressor.GZIP_EXTENSION), compressed.body);
+
+        Served plain = get(COMPRESSED_PAGE, null, null);
+        assertEquals(HttpServletResponse.SC_OK, plain.status);
+        assertNull(plain.headers.get("Content-Encoding"));
+        assertArrayEquals(read(COMPRESSED_PAGE), plain.body);
+
+        tamper(COMPRESSED_PAGE + ReportCompressor.GZIP_EXTENSION);
+        assertEquals(HttpServletResponse.SC_FORBIDDEN, get(COMPRESSED_PAGE, GZIP, null).status);
+        assertEquals(HttpServletResponse.SC_OK, get(COMPRESSED_PAGE, null, null).status);
+    }
+
+    @Test
+    void answersNotModifiedOnlyForRecordedChecksum() throws Exception {
+        String etag = get(PAGE, null, null).headers.get("ETag");
+
+        long misses = ChecksumCache.getMisses();
+        Served notModified = get(PAGE, null, etag);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModified.status);
+        assertNull(notModified.body);
+        // answered from the recorded checksum, without reading the file
+        assertEquals(misses, ChecksumCache.getMisses());
+
+        assertEquals(HttpServletResponse.SC_OK, get(PAGE, null, "\"0123456789\"").status);
+
+        // file added after the checksums were recorded is never answered, whatever the client has
+        write("unrecorded.html", read(PAGE));
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, get("unrecorded.html", null, etag).status);
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, get("unrecorded.html", null, "*").status);
+    }
+
+    private Served get(String path, String acceptEncoding, String ifNoneMatch) throws Exception {
+        StaplerRequest request = mock(StaplerRequest.class);
+        when(request.getRestOfPath()).thenReturn("/" + path);
+        when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+        when(request.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        Served served = new Served();
+        StaplerResponse response = mock(StaplerResponse.class, served);
+
+        HttpResponse result;
+        try {
+            result = action.doDynamic(request, response);
+        } catch (HttpResponseException e) {
+            result = e;
+        }
+        result.generateResponse(request, response, null);
+        return served;
+    }
+
+    private void write(String name, byte[] content) throws Exception {
+        Files.createDirectories(rootDir.toPath());
+        Files.write(new File(rootDir, name).toPath(), content);
+    }
+
+    private byte[] read(String name) throws Exception {
+        return Files.readAllBytes(new File(rootDir, name).toPath());
+    }
+
+    private void tamper(String name) throws Exception {
+        File file = new File(rootDir, name);
+        long lastModified = file.lastModified();
+        byte[] content = read(name);
+        content[content.length / 2] ^= 1;
+        write(name, content);
+        file.setLastModified(lastModified);
+    }
+
+    private static String page(String body) {
+        return "<html><body>" + body + "</body></html>";
+    }
+
+    private static byte[] gzip(String content) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Records the status, headers and content sent, regardless of which overload of the response is used.
+     */
+    private static final class Served implements Answer<Object> {
+
+        private final Map<String, String> headers = new HashMap<>();
+        private int status = HttpServletResponse.SC_OK;
+        private byte[] body;
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            switch (invocation.getMethod().getName()) {
+                case "setStatus":
+                    status = invocation.getArgument(0);
+                    return null;
+                case "setHeader":
+                    headers.put(invocation.getArgument(0), invocation.getArgument(1));
+                    return null;
+                case "serveFile":
+                    body = IOUtils.toByteArray((InputStream) invocation.getArgument(1));
+                    return null;
+                default:
+                    return RETURNS_DEFAULTS.answer(invocation);
+            }
+        }
+    }
+}
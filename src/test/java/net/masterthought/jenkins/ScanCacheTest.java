@@ -0,0 +1,74 @@
+package net.masterthought.jenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import net.masterthought.cucumber.json.support.Status;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ScanCacheTest {
+
+    private static final String REPORT = "[{\"id\":\"login\",\"name\":\"Login\",\"elements\":["
+            + "{\"type\":\"background\",\"steps\":[{\"match\":{\"location\":\"Steps.open()\"},\"result\":{\"status\":\"passed\",\"duration\":5}}]},"
+            + "{\"id\":\"login;valid\",\"name\":\"Valid\",\"type\":\"scenario\",\"steps\":["
+            + "{\"match\":{\"location\":\"Steps.login()\"},\"result\":{\"status\":\"failed\",\"duration\":7}}]}]}]";
+
+    @TempDir
+    private File tempDir;
+
+    @Test
+    void reusesScanOfUnchangedFile() throws Exception {
+        File first = write("first.json", REPORT);
+        File second = write("second.json", REPORT);
+        CucumberJsonScanner scanner = new CucumberJsonScanner(0);
+        ScanCache cache = new ScanCache(tempDir);
+
+        ReportScan scanned = new ReportScan();
+        scanned.add(cache.scan(first, scanner));
+        ReportScan cached = new ReportScan();
+        cached.add(cache.scan(second, scanner));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        ScenarioHistory.Outcome scenario = cached.getScenarios().iterator().next();
+        assertEquals("Valid", scenario.getName());
+        assertEquals(Status.FAILED, scenario.getStatus());
+        assertEquals(12, scenario.getDuration());
+        assertEquals(12, cached.getFeatures().iterator().next().getDuration());
+        assertEquals(2, cached.getSteps().size());
+        ReportSummary summary = cached.getSummary(Collections.emptySet(), false, false);
+        assertEquals(2, summary.getSteps());
+        assertEquals(1, summary.getFailedScenarios());
+        assertEquals(scanned.getSteps().getPercentile(0, 95), cached.getSteps().getPercentile(0, 95));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedScans() throws Exception {
+        CucumberJsonScanner scanner = new CucumberJsonScanner(0);
+        ScanCache cache = new ScanCache(tempDir);
+        for (int i = 0; i < 3; i++) {
+            cache.scan(write(i + ".json", REPORT.replace("Valid", "Valid " + i)), scanner);
+        }
+        File[] entries = new File(tempDir, ScanCache.DIRECTORY).listFiles();
+        for (File entry : entries) {
+            entry.setLastModified(1000);
+        }
+        // uses the scan of the first file again
+        cache.scan(new File(tempDir, "0.json"), scanner);
+
+        assertEquals(2, cache.evict(1));
+        cache.scan(new File(tempDir, "0.json"), scanner);
+        assertEquals(2, cache.getHits());
+    }
+
+    private File write(String name, String content) throws Exception {
+        File file = new File(tempDir, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,192 @@
+package net.masterthought.jenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.masterthought.cucumber.json.support.Status;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ScenarioHistoryTest {
+
+    @TempDir
+    private File tempDir;
+
+    @Test
+    void countsFlipsOfScenarios() throws Exception {
+        ScenarioHistory history = new ScenarioHistory(tempDir);
+        for (int build = 1; build <= 10; build++) {
+            history.append(build, Arrays.asList(
+                    new ScenarioHistory.Outcome("stable", "Stable", Status.PASSED, build),
+                    new ScenarioHistory.Outcome("flaky", "Flaky", build % 2 == 0 ? Status.FAILED : Status.PASSED, build * 10L)));
+        }
+
+        List<ScenarioHistory.Statistics> statistics = history.query(0);
+
+        assertEquals(2, statistics.size());
+        ScenarioHistory.Statistics flaky = statistics.get(0);
+        assertEquals("flaky", flaky.getId());
+        assertEquals(10, flaky.getRuns());
+        assertEquals(5, flaky.getFailures());
+        assertEquals(9, flaky.getFlips());
+        assertEquals(1.0, flaky.getFlipRate());
+        assertEquals(50, flaky.getP50());
+        assertEquals(100, flaky.getP95());
+        assertEquals(0, statistics.get(1).getFlips());
+    }
+
+    @Test
+    void queriesLastBuilds() throws Exception {
+        ScenarioHistory history = new ScenarioHistory(tempDir);
+        for (int build = 1; build <= 10; build++) {
+            history.append(build, Collections.singletonList(
+                    new ScenarioHistory.Outcome("scenario", "Scenario", build > 7 ? Status.FAILED : Status.PASSED, build)));
+        }
+
+        ScenarioHistory.Statistics statistics = history.query(3).get(0);
+
+        assertEquals(3, statistics.getRuns());
+        assertEquals(3, statistics.getFailures());
+        assertEquals(0, statistics.getFlips());
+        assertEquals(9, statistics.getP50());
+    }
+
+    @Test
+    void keepsLastBuildsWhenCompacted() throws Exception {
+        ScenarioHistory history = new ScenarioHistory(tempDir);
+        for (int build = 1; build <= 9; build++) {
+            history.append(build, Collections.singletonList(new ScenarioHistory.Outcome("scenario", "Scenario", Status.PASSED, build)));
+        }
+
+        assertFalse(history.compact(5));
+        history.append(10, Collections.singletonList(new ScenarioHistory.Outcome("scenario", "Scenario", Status.PASSED, 10)));
+        assertTrue(history.compact(5));
+
+        ScenarioHistory.Statistics statistics = history.query(0).get(0);
+        assertEquals(5, statistics.getRuns());
+        assertEquals(8, statistics.getP50());
+    }
+
+    @Test
+    void removesScenariosOfRemovedBuildsFromDictionary() throws Exception {
+        ScenarioHistory history = new ScenarioHistory(tempDir);
+        history.append(1, Collections.singletonList(new ScenarioHistory.Outcome("removed", "Removed", Status.FAILED, 1)));
+        for (int build = 2; build <= 4; build++) {
+            history.append(build, Collections.singletonList(new ScenarioHistory.Outcome("kept", "Kept", Status.PASSED, build)));
+        }
+        File dictionary = new File(tempDir, ScenarioHistory.DICTIONARY_FILE);
+        long dictionarySize = dictionary.length();
+
+        assertTrue(history.compact(2));
+
+        assertTrue(dictionary.length() < dictionarySize);
+        history.append(5, Arrays.asList(
+                new ScenarioHistory.Outcome("added", "Added", Status.FAILED, 5),
+                new ScenarioHistory.Outcome("kept", "Kept", Status.PASSED, 5)));
+        List<ScenarioHistory.Statistics> statistics = history.query(0);
+        assertEquals(2, statistics.size());
+        assertEquals("Added", statistics.get(0).getName());
+        assertEquals(1, statistics.get(0).getRuns());
+        assertEquals("Kept", statistics.get(1).getName());
+        assertEquals(3, statistics.get(1).getRuns());
+    }
+
+    @Test
+    void keepsBuildsWhichAreNotMerged() throws Exception {
+        ScenarioHistory history = new ScenarioHistory(tempDir);
+        for (int build = 1; build <= 4; build++) {
+            history.append(build, Collections.singletonList(new ScenarioHistory.Outcome("scenario", "Scenario", Status.PASSED, build)));
+        }
+
+        history.merge(Arrays.asList(
+                new ScenarioHistory.Build(3, Collections.singletonList(new ScenarioHistory.Outcome("scenario", "Scenario", Status.FAILED, 30))),
+                new ScenarioHistory.Build(1, Collections.singletonList(new ScenarioHistory.Outcome("scenario", "Scenario", Status.FAILED, 10)))));
+
+        ScenarioHistory.Statistics statistics = history.query(0).get(0);
+        assertEquals(4, statistics.getRuns());
+        assertEquals(2, statistics.getFailures());
+        assertEquals(3, statistics.getFlips());
+        assertEquals(4, statistics.getP50());
+    }
+
+    @Test
+    void ignoresPartialRecord() throws Exception {
+        ScenarioHistory history = new ScenarioHistory(tempDir);
+        history.append(1, Collections.singletonList(new ScenarioHistory.Outcome("first", "First", Status.PASSED, 1)));
+        history.append(2, Collections.singletonList(new ScenarioHistory.Outcome("first", "First", Status.PASSED, 1)));
+        try (RandomAccessFile log = new RandomAccessFile(new File(tempDir, ScenarioHistory.LOG_FILE), "rw")) {
+            // as if the second build was interrupted while it was appended
+            log.setLength(log.length() - 3);
+        }
+
+        assertEquals(1, history.query(0).get(0).getRuns());
+        history.append(3, Arrays.asList(
+                new ScenarioHistory.Outcome("first", "First", Status.FAILED, 1),
+                new ScenarioHistory.Outcome("second", "Second", Status.PASSED, 1)));
+
+        List<ScenarioHistory.Statistics> statistics = history.query(0);
+        assertEquals(2, statistics.size());
+        assertEquals("first", statistics.get(0).getId());
+        assertEquals(2, statistics.get(0).getRuns());
+        assertEquals(1, statistics.get(0).getFlips());
+        assertEquals("Second", statistics.get(1).getName());
+    }
+
+    @Test
+    void findsDurationRegressions() throws Exception {
+        long second = 1_000_000_000L;
+        ScenarioHistory history = new ScenarioHistory(tempDir);
+        for (int build = 1; build <= 10; build++) {
+            history.append(build, Arrays.asList(
+                    new ScenarioHistory.Outcome("slower", "Slower", Status.PASSED, build * second),
+                    new ScenarioHistory.Outcome("same", "Same", Status.PASSED, 10 * second)));
+        }
+
+        List<DurationRegression.Regression> regressions = DurationRegression.find("Scenario", history, Arrays.asList(
+                new ScenarioHistory.Outcome("slower", "Slower", Status.PASSED, 20 * second),
+                new ScenarioHistory.Outcome("same", "Same", Status.PASSED, 11 * second),
+                new ScenarioHistory.Outcome("new", "New", Status.PASSED, 100 * second)), 90, 50);
+
+        assertEquals(1, regressions.size());
+        assertEquals("Slower", regressions.get(0).getName());
+        assertEquals(9 * second, regressions.get(0).getBaseline());
+    }
+
+    @Test
+    void readsBuildFile() throws Exception {
+        File buildFile = new File(tempDir, "cucumber-html-reports" + ScenarioHistory.BUILD_FILE_EXTENSION);
+        List<ScenarioHistory.Outcome> outcomes = new ArrayList<>();
+        outcomes.add(new ScenarioHistory.Outcome("feature;scenario", "Scenario", Status.UNDEFINED, 42));
+
+        ScenarioHistory.writeBuildFile(buildFile, outcomes);
+
+        List<ScenarioHistory.Outcome> read = ScenarioHistory.readBuildFile(buildFile);
+        assertEquals(1, read.size());
+        assertEquals("feature;scenario", read.get(0).getId());
+        assertEquals(Status.UNDEFINED, read.get(0).getStatus());
+        assertEquals(42, read.get(0).getDuration());
+    }
+
+    @Test
+    void refusesBuildFileWithInvalidStatus() throws Exception {
+        File buildFile = new File(tempDir, "cucumber-html-reports" + ScenarioHistory.BUILD_FILE_EXTENSION);
+        ScenarioHistory.writeBuildFile(buildFile, Collections.singletonList(new ScenarioHistory.Outcome("id", "Name", Status.PASSED, 42)));
+        try (RandomAccessFile file = new RandomAccessFile(buildFile, "rw")) {
+            // magic, count, id and name precede the status
+            file.seek(4 + 4 + 4 + 2 + 4 + 4);
+            file.writeByte(CucumberJsonScanner.STATUSES.length);
+        }
+
+        assertThrows(IOException.class, () -> ScenarioHistory.readBuildFile(buildFile));
+    }
+}
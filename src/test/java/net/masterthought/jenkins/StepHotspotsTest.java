@@ -0,0 +1,52 @@
+package net.masterthought.jenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StepHotspotsTest {
+
+    @TempDir
+    private File tempDir;
+
+    @Test
+    void estimatesPercentileWithinBucketError() {
+        StepHotspots steps = new StepHotspots();
+        for (long duration = 1; duration <= 1000; duration++) {
+            steps.add("Steps.step()", duration * 1_000_000);
+        }
+
+        long p95 = steps.getPercentile(0, 95);
+
+        assertTrue(p95 >= 950_000_000L && p95 <= 950_000_000L * 1.125, "p95 is " + p95);
+        assertEquals(1_000_000_000L, steps.getPercentile(0, 100));
+    }
+
+    @Test
+    void mergesStepsByLocation() throws Exception {
+        StepHotspots first = new StepHotspots();
+        first.add("Steps.slow()", 3_000);
+        first.add("", 1);
+        StepHotspots second = new StepHotspots();
+        second.add("Steps.fast()", 10);
+        second.add("Steps.slow()", 5_000);
+
+        StepHotspots steps = new StepHotspots();
+        steps.addAll(first);
+        steps.addAll(second);
+
+        assertEquals(3, steps.size());
+        assertEquals(4, steps.getExecutions());
+        File jsonFile = new File(tempDir, StepHotspots.JSON_FILE);
+        steps.writeJson(jsonFile);
+        String json = new String(Files.readAllBytes(jsonFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{\"steps\":[{\"location\":\"Steps.slow()\",\"count\":2,\"total\":8000,\"mean\":4000,"), json);
+        assertTrue(json.contains("\"location\":\"" + StepHotspots.UNKNOWN_LOCATION + "\""), json);
+    }
+}
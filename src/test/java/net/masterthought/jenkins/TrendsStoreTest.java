@@ -0,0 +1,194 @@
+package net.masterthought.jenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TrendsStoreTest {
+
+    private static final int THREADS = 16;
+    private static final int BUILDS_PER_THREAD = 250;
+
+    @TempDir
+    private File tempDir;
+
+    @Test
+    void keepsEveryEntryAppendedConcurrently() throws Exception {
+        TrendsStore store = new TrendsStore(new File(tempDir, TrendsStore.LOG_FILE));
+
+        runConcurrently(build -> new TrendsStore(store.getFile()).append(build, summaryOf(build)));
+
+        List<TrendsStore.Entry> entries = store.readLast(0);
+        assertEquals(THREADS * BUILDS_PER_THREAD, entries.size());
+        Set<Integer> buildNumbers = new HashSet<>();
+        for (TrendsStore.Entry entry : entries) {
+            assertEntryIsComplete(entry);
+            buildNumbers.add(entry.getBuildNumber());
+        }
+        assertEquals(THREADS * BUILDS_PER_THREAD, buildNumbers.size());
+    }
+
+    @Test
+    void keepsLastEntriesWhenCompactedConcurrently() throws Exception {
+        int limit = 50;
+        TrendsStore store = new TrendsStore(new File(tempDir, TrendsStore.LOG_FILE));
+
+        runConcurrently(build -> {
+            TrendsStore threadStore = new TrendsStore(store.getFile());
+            threadStore.append(build, summaryOf(build));
+            threadStore.compact(limit);
+        });
+
+        List<TrendsStore.Entry> entries = store.readLast(0);
+        assertTrue(entries.size() >= limit && entries.size() < 2 * limit, "Log has " + entries.size() + " entries");
+        Set<Integer> buildNumbers = new HashSet<>();
+        for (TrendsStore.Entry entry : entries) {
+            assertEntryIsComplete(entry);
+            assertTrue(buildNumbers.add(entry.getBuildNumber()), "Duplicated build " + entry.getBuildNumber());
+        }
+    }
+
+    @Test
+    void updatesLogsOfDifferentTitlesIndependently() throws Exception {
+        runConcurrently(build -> {
+            // builds are spread over logs of several titles, each log is appended by different threads at once
+            TrendsStore store = new TrendsStore(new File(tempDir, (build % THREADS) + "-" + TrendsStore.LOG_FILE));
+            store.append(build, summaryOf(build));
+        });
+
+        for (int thread = 0; thread < THREADS; thread++) {
+            TrendsStore store = new TrendsStore(new File(tempDir, thread + "-" + TrendsStore.LOG_FILE));
+            assertEquals(BUILDS_PER_THREAD, store.readLast(0).size());
+        }
+    }
+
+    @Test
+    void insertsEntriesOfOlderBuildsInOrder() throws Exception {
+        TrendsStore store = new TrendsStore(new File(tempDir, TrendsStore.LOG_FILE));
+        // reports rendered in the background can be finished in different order than the builds
+        for (int build : new int[]{1, 4, 2, 5, 3}) {
+            store.append(build, summaryOf(build));
+        }
+
+        List<TrendsStore.Entry> entries = store.readLast(0);
+        assertEquals(5, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i + 1, entries.get(i).getBuildNumber());
+            assertEntryIsComplete(entries.get(i));
+        }
+    }
+
+    @Test
+    void migratesTrendsFromJsonFile() throws Exception {
+        File jsonFile = new File(tempDir, "cucumber-trends.json");
+        Files.write(jsonFile.toPath(), ("{\"buildNumbers\":[\"1\",\"2\"],\"passedFeatures\":[1,2],\"failedFeatures\":[0,1],"
+                + "\"totalFeatures\":[1,3],\"durations\":[100,200]}").getBytes(StandardCharsets.UTF_8));
+        TrendsStore store = new TrendsStore(new File(tempDir, TrendsStore.LOG_FILE));
+
+        assertTrue(store.migrate(jsonFile));
+        assertFalse(store.migrate(jsonFile));
+
+        List<TrendsStore.Entry> entries = store.readLast(0);
+        assertEquals(2, entries.size());
+        assertEquals(2, entries.get(1).getBuildNumber());
+        assertEquals(3, entries.get(1).getSummary().getFeatures());
+        assertEquals(1, entries.get(1).getSummary().getFailedFeatures());
+        assertEquals(200, entries.get(1).getSummary().getDuration());
+    }
+
+    @Test
+    void mergesRebuiltEntriesWithImportedOnes() throws Exception {
+        File jsonFile = new File(tempDir, "cucumber-trends.json");
+        Files.write(jsonFile.toPath(), ("{\"buildNumbers\":[\"1\",\"2\",\"3\"],\"totalFeatures\":[10,20,30],"
+                + "\"durations\":[100,200,300]}").getBytes(StandardCharsets.UTF_8));
+        TrendsStore store = new TrendsStore(new File(tempDir, TrendsStore.LOG_FILE));
+        store.migrate(jsonFile);
+        store.append(5, summaryOf(5));
+
+        // builds 1 and 3 have no stored summary, build 4 was not in the log yet
+        store.merge(Arrays.asList(new TrendsStore.Entry(4, summaryOf(4)), new TrendsStore.Entry(2, summaryOf(2))));
+
+        List<TrendsStore.Entry> entries = store.readLast(0);
+        assertEquals(5, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i + 1, entries.get(i).getBuildNumber());
+        }
+        assertEquals(10, entries.get(0).getSummary().getFeatures());
+        assertEquals(2, entries.get(1).getSummary().getFeatures());
+        assertEquals(30, entries.get(2).getSummary().getFeatures());
+        assertEntryIsComplete(entries.get(3));
+        assertEntryIsComplete(entries.get(4));
+    }
+
+    @Test
+    void writesLastEntriesAsJson() throws Exception {
+        TrendsStore store = new TrendsStore(new File(tempDir, TrendsStore.LOG_FILE));
+        for (int build = 1; build <= 5; build++) {
+            store.append(build, summaryOf(build));
+        }
+        File jsonFile = new File(tempDir, "cucumber-trends.json");
+
+        store.writeJson(jsonFile, 2);
+
+        String json = new String(Files.readAllBytes(jsonFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"buildNumbers\":[\"4\",\"5\"]"), json);
+        assertTrue(json.contains("\"totalFeatures\":[4,5]"), json);
+    }
+
+    private interface BuildTask {
+        void run(int build) throws Exception;
+    }
+
+    private static void runConcurrently(BuildTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int firstBuild = thread * BUILDS_PER_THREAD;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int build = firstBuild; build < firstBuild + BUILDS_PER_THREAD; build++) {
+                        task.run(build);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ReportSummary summaryOf(int build) {
+        return new ReportSummary(build, build, 0, build, build, 0, build, build, 0, 0, 0, 0, build * 1000L);
+    }
+
+    private static void assertEntryIsComplete(TrendsStore.Entry entry) {
+        // torn records would mix numbers of different builds
+        ReportSummary summary = entry.getSummary();
+        int build = entry.getBuildNumber();
+        assertEquals(build, summary.getFeatures());
+        assertEquals(build, summary.getScenarios());
+        assertEquals(build, summary.getPassedSteps());
+        assertEquals(build * 1000L, summary.getDuration());
+    }
+}